@@ -0,0 +1,175 @@
+package com.lbq.concurrent.chapter03;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+/**
+ * FightQueryExample为每一家航空公司启动一个FightQueryTask线程并逐个join，查询的响应时间取决于最慢的那一家航空公司，
+ * ScatterGatherFightQuery则是一个可以复用的Scatter-Gather组件，仍然使用FightQuery(比如FightQueryTask)完成每一家航空公司的查询：
+ * 1.每一家航空公司的FightQuery都交给共享的线程池执行，而不是每次查询都启动新的线程，同时也是Runnable的FightQuery(FightQueryTask)
+ *   会先在线程池中被执行，然后再通过get方法获取结果。
+ * 2.整个查询有一个全局的截止时间(deadline)，截止时间到达时返回已经就绪的部分结果，尚未完成的查询将会被取消(中断)。
+ * 3.如果某一家航空公司在hedgeDelay时间内仍未返回，则会对其发起第二次请求(对冲请求)，两次请求中先返回的结果有效，
+ *   因此每一家航空公司由一个Supplier表示，每次请求都会创建一个新的FightQuery；第一次请求失败时立即发起对冲请求，而不必等到hedgeDelay。
+ * 4.每当一家航空公司返回结果时，结果会立即通过onResult回调交给调用者，而不必等待所有的航空公司。
+ * @author 14378
+ *
+ */
+public class ScatterGatherFightQuery {
+	//执行查询的共享线程池
+	private final ExecutorService queryExecutor;
+	//用于调度对冲请求
+	private final ScheduledExecutorService hedgeScheduler;
+	//发起对冲请求之前等待的时间，单位为纳秒，为0时不发起对冲请求
+	private final long hedgeDelayNanos;
+	
+	public ScatterGatherFightQuery(ExecutorService queryExecutor, ScheduledExecutorService hedgeScheduler, long hedgeDelay, TimeUnit unit) {
+		this.queryExecutor = queryExecutor;
+		this.hedgeScheduler = hedgeScheduler;
+		this.hedgeDelayNanos = unit.toNanos(hedgeDelay);
+	}
+	
+	public List<String> search(List<? extends Supplier<? extends FightQuery>> fightQueries, long timeout, TimeUnit unit) throws InterruptedException {
+		return search(fightQueries, timeout, unit, flights -> {});
+	}
+	/**
+	 * 向所有的航空公司发起查询，最多等待timeout时间，返回在截止时间之前就绪的所有结果
+	 * @param fightQueries 每一家航空公司一个Supplier，每次请求都会通过它创建一个新的FightQuery
+	 * @param timeout 全局的截止时间
+	 * @param unit
+	 * @param onResult 每当一家航空公司返回结果时，在调用线程中执行该回调
+	 * @return
+	 * @throws InterruptedException
+	 */
+	public List<String> search(List<? extends Supplier<? extends FightQuery>> fightQueries, long timeout, TimeUnit unit, Consumer<List<String>> onResult) throws InterruptedException {
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		//每一家航空公司返回的结果会被放入该队列，由调用线程依次取出
+		final BlockingQueue<List<String>> arrivals = new LinkedBlockingQueue<>();
+		final List<AirlineQuery> queries = new ArrayList<>(fightQueries.size());
+		//1.Scatter：向每一家航空公司发起查询，并调度对冲请求
+		for(Supplier<? extends FightQuery> fightQuery : fightQueries) {
+			AirlineQuery query = new AirlineQuery(fightQuery, arrivals);
+			queries.add(query);
+			//先调度对冲请求，这样第一次请求失败时一定能够找到它
+			if(hedgeDelayNanos > 0) {
+				query.hedge = hedgeScheduler.schedule(query::attempt, hedgeDelayNanos, TimeUnit.NANOSECONDS);
+			}
+			query.attempt();
+		}
+		//2.Gather：在截止时间之前收集结果，每收到一个结果就交给onResult
+		final List<String> result = new ArrayList<>();
+		try {
+			for(int received = 0; received < queries.size(); received++) {
+				long remaining = deadline - System.nanoTime();
+				if(remaining <= 0) {
+					break;
+				}
+				List<String> flights = arrivals.poll(remaining, TimeUnit.NANOSECONDS);
+				if(flights == null) {
+					break;
+				}
+				result.addAll(flights);
+				onResult.accept(flights);
+			}
+		} finally {
+			//3.截止时间到达或者全部完成，取消所有尚未完成的请求
+			queries.forEach(AirlineQuery::cancel);
+		}
+		return result;
+	}
+	/**
+	 * 对某一家航空公司的查询，可能包含首次请求和对冲请求，但只有一个结果会被交给调用者
+	 * @author 14378
+	 *
+	 */
+	private class AirlineQuery {
+		
+		private final Supplier<? extends FightQuery> fightQuery;
+		
+		private final BlockingQueue<List<String>> arrivals;
+		//是否已经有请求返回了结果(包括全部失败)
+		private final AtomicBoolean completed = new AtomicBoolean(false);
+		//失败的请求数，所有的请求都失败时视为没有航班信息
+		private final AtomicInteger failures = new AtomicInteger();
+		//正在执行的请求
+		private final List<Future<?>> attempts = Collections.synchronizedList(new ArrayList<>(2));
+		
+		private volatile Future<?> hedge;
+		
+		AirlineQuery(Supplier<? extends FightQuery> fightQuery, BlockingQueue<List<String>> arrivals) {
+			this.fightQuery = fightQuery;
+			this.arrivals = arrivals;
+		}
+		
+		void attempt() {
+			if(completed.get()) {
+				return;
+			}
+			Future<?> attempt = queryExecutor.submit(() -> {
+				List<String> flights;
+				try {
+					FightQuery query = fightQuery.get();
+					//FightQueryTask这样的FightQuery需要先执行查询
+					if(query instanceof Runnable) {
+						((Runnable) query).run();
+					}
+					flights = new ArrayList<>(query.get());
+				} catch (RuntimeException e) {
+					failed();
+					return;
+				}
+				//先返回的请求有效，落后的请求会在search结束时被取消
+				complete(flights);
+			});
+			attempts.add(attempt);
+			//在提交的过程中已经有了结果或者查询已经结束，该请求已没有必要继续执行
+			if(completed.get()) {
+				attempt.cancel(true);
+			}
+		}
+		/**
+		 * 对冲请求还没有发起时立即发起，而不是等到hedgeDelay，否则所有的请求都失败时视为没有航班信息，失败的航空公司不会拖慢整个查询
+		 */
+		private void failed() {
+			int failures = this.failures.incrementAndGet();
+			Future<?> hedge = this.hedge;
+			if(hedge != null && hedge.cancel(false)) {
+				attempt();
+			}else if(failures >= (hedgeDelayNanos > 0 ? 2 : 1)) {
+				complete(Collections.emptyList());
+			}
+		}
+		
+		private void complete(List<String> flights) {
+			if(completed.compareAndSet(false, true)) {
+				arrivals.offer(flights);
+				cancelHedge();
+			}
+		}
+		
+		void cancelHedge() {
+			Future<?> hedge = this.hedge;
+			if(hedge != null) {
+				hedge.cancel(false);
+			}
+		}
+		
+		void cancel() {
+			completed.set(true);
+			cancelHedge();
+			synchronized(attempts) {
+				attempts.forEach(attempt -> attempt.cancel(true));
+			}
+		}
+	}
+}
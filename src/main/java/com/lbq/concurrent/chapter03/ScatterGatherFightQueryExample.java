@@ -0,0 +1,36 @@
+package com.lbq.concurrent.chapter03;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+/**
+ * 使用ScatterGatherFightQuery改写FightQueryExample，每一家航空公司仍然使用FightQueryTask进行查询，
+ * 但是FightQueryTask在共享的线程池中被执行，查询最多等待5秒，超过2秒仍未返回的航空公司会被再次查询，
+ * 每一家航空公司的结果返回时会被立即输出。
+ * @author 14378
+ *
+ */
+public class ScatterGatherFightQueryExample {
+	//合作的各大航空公司
+	private static List<String> fightCompany = Arrays.asList("CSA", "CEA", "HNA");
+
+	public static void main(String[] args) throws InterruptedException {
+		ExecutorService queryExecutor = Executors.newFixedThreadPool(6);
+		ScheduledExecutorService hedgeScheduler = Executors.newSingleThreadScheduledExecutor();
+		ScatterGatherFightQuery query = new ScatterGatherFightQuery(queryExecutor, hedgeScheduler, 2, TimeUnit.SECONDS);
+		List<Supplier<FightQuery>> fightQueries = fightCompany.stream()
+				.map(f -> (Supplier<FightQuery>) () -> new FightQueryTask(f, "SH", "BJ")).collect(Collectors.toList());
+		
+		List<String> results = query.search(fightQueries, 5, TimeUnit.SECONDS, flights -> System.out.println("arrived " + flights));
+		System.out.println("=================result==================");
+		results.forEach(System.out::println);
+		
+		queryExecutor.shutdownNow();
+		hedgeScheduler.shutdownNow();
+	}
+}
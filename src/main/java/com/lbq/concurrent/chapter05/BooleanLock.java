@@ -3,118 +3,236 @@ package com.lbq.concurrent.chapter05;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 /**
  * BooleanLock是Lock的一个Boolean实现，通过控制一个Boolean变量的开关来决定是否允许当前的线程获得该锁。
+ * 获取锁失败的线程在一个FIFO队列中等待，锁的所有权由unlock直接交给队首的线程：
+ * 1.owner记录了当前拥有锁的线程，为null表示锁没有被任何线程获得。
+ * 2.获取锁失败的线程被封装成Node加入无锁的FIFO队列(ConcurrentLinkedQueue)，然后在自旋一段时间之后通过LockSupport.park挂起，
+ *   只有位于队首的线程才会尝试通过CAS抢锁。
+ * 3.unlock时直接将锁的所有权交给(hand off)队首的线程并且只唤醒这一个线程，锁按照FIFO的顺序被获得，不会出现惊群，也不会出现饥饿。
+ * 4.自旋的次数是自适应的，如果等待的线程经常在自旋期间就获得了锁(持有锁的时间很短)，则增加自旋的次数，否则减少，避免无意义地消耗CPU。
+ * 5.超时使用System.nanoTime计算截止时间，不会受到系统时间调整的影响。
+ * 6.超时或者被中断的线程只会将自己的Node标记为CANCELLED，unlock时会跳过这些Node。
+ * 7.getBlockedThreads不需要加锁，只是对队列的一次遍历，返回的是某一时刻的快照。
  * @author 14378
  *
  */
 public class BooleanLock implements Lock{
 
+	private final static int MIN_SPINS = 0;
+
+	private final static int MAX_SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 1 << 10 : 0;
 	/**
-	 * currentThread代表当前拥有锁的线程
+	 * owner代表当前拥有锁的线程，为null时代表当前该锁没有被任何线程获得或者已经释放
 	 */
-	private Thread currentThread;
+	private final AtomicReference<Thread> owner = new AtomicReference<>();
 	/**
-	 * locked是一个Boolean开关，false代表当前该锁没有被任何线程获得或者已经释放，true代表该锁已经被某个线程获得，该线程就是currentThread
+	 * waiters用来存储哪些线程在获取当前锁时进入了阻塞状态，按照FIFO的顺序获得锁。
 	 */
-	private boolean locked = false;
+	private final ConcurrentLinkedQueue<Node> waiters = new ConcurrentLinkedQueue<>();
 	/**
-	 * blockedList用来存储哪些线程在获取当前线程时进入了阻塞状态。
+	 * 当前的自旋次数，多个线程并发地修改时可能会丢失更新，这对于一个估算值来说无关紧要
 	 */
-	private final List<Thread> blockedList = new ArrayList<>();
-	
+	private volatile int spins = MAX_SPINS >>> 4;
+
 	/**
-	 * 1.Lock方法使用同步代码块的方式进行方法同步。
-	 * 2.如果当前锁已经被某个线程获得，则该线程将加入阻塞队列，并且使当前线程wait释放对this monitor的所有权。
-	 * 3.如果当前锁没有被其他线程获得，则该线程将尝试从阻塞队列中删除自己。
-	 * 4.locked开关被指定为true。
-	 * 5.记录获取锁的线程。
+	 * 1.如果当前没有线程在等待，则直接尝试通过CAS获得锁。
+	 * 2.否则将当前线程加入等待队列，直到锁被交给当前线程。
 	 */
 	@Override
 	public void lock() throws InterruptedException {
-		synchronized(this) {
-			while(locked) {
-				//暂存当前线程
-				final Thread tempThread = Thread.currentThread();
-				try {
-					if(!blockedList.contains(Thread.currentThread())) {
-						blockedList.add(Thread.currentThread());
-					}
-					this.wait();
-				}catch(InterruptedException e) {
-					//如果当前线程在wait时被中断，则从blockedList中将其删除，避免内存泄漏
-					blockedList.remove(tempThread);
-					System.out.println("tempThread:" + tempThread);
-					System.out.println("tempThread:" + Thread.currentThread());
-					//继续抛出中断异常
-					throw e;
-				}
-				
-			}
-			blockedList.remove(Thread.currentThread());
-			this.locked = true;
-			this.currentThread = Thread.currentThread();
+		if(tryAcquire()) {
+			return;
 		}
-		
+		acquireQueued(0L);
 	}
 
 	/**
 	 * 1.如果millis不合法，则默认调用lock()方法，当然也可以抛出参数非法的异常，一般来说，抛出异常是一种比较好的做法。
-	 * 2.如果remainingMillis小于等于0，则意味着当前线程被其他线程唤醒或者在指定的wait时间到了之后还没有获得锁，这种情况下会抛出超时的异常。
-	 * 3.等待remainingMillis的毫秒数，该值最开始是由其他线程传入的，但在多次wait的过程中会重新计算。
-	 * 4.重新计算remainingMillis时间。
-	 * 5.获得该锁，并且从block列表中删除当前线程，将locked的状态修改为true并且指定获得锁的线程就是当前线程。
+	 * 2.截止时间由System.nanoTime计算，到达截止时间还没有获得锁则抛出超时的异常。
 	 */
 	@Override
 	public void lock(long millis) throws InterruptedException, TimeoutException {
-		synchronized(this) {
-			if(millis <= 0) {
-				this.lock();
-			}else {
-				long remainingMillis = millis;
-				long endMillis = System.currentTimeMillis() + remainingMillis;
-				while(locked) {
-					if(remainingMillis <= 0) {
-						throw new TimeoutException("can not get the lock during " + millis + " ms.");
-					}
-					if(!blockedList.contains(Thread.currentThread())) {
-						blockedList.add(Thread.currentThread());
-					}
-					this.wait(remainingMillis);
-					remainingMillis = endMillis - System.currentTimeMillis();
-				}
-				blockedList.remove(Thread.currentThread());
-				this.locked = true;
-				this.currentThread = Thread.currentThread();
-			}
+		if(millis <= 0) {
+			this.lock();
+			return;
+		}
+		if(tryAcquire()) {
+			return;
+		}
+		if(!acquireQueued(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis))) {
+			throw new TimeoutException("can not get the lock during " + millis + " ms.");
 		}
-		
 	}
 
 	/**
-	 * unlock()方法需要做的仅仅是将locked状态修改为false，并且唤醒wait set中的其他线程，再次争抢锁资源。
-	 * 但是需要注意的一点是，哪个线程加的锁只能由该线程来解锁：
+	 * 哪个线程加的锁只能由该线程来解锁：
 	 * 1.判断当前线程是否为获取锁的那个线程，只有加了锁的线程才有资格进行解锁。
-	 * 2.将锁的locked状态修改为false。
-	 * 3.通知其他在wait set中的线程，你们可以再次尝试抢锁了，这里使用notify和notifyAll都可以。
+	 * 2.从队首取出一个没有被取消的Node，将锁的所有权直接交给它并将其唤醒。
+	 * 3.如果队列中没有等待的线程，则将锁释放。
 	 */
 	@Override
 	public void unlock() {
-		synchronized(this) {
-			if(currentThread == Thread.currentThread()) {
-				this.locked = false;
-				Optional.of(Thread.currentThread().getName() + " release the lock.").ifPresent(System.out::println);
-				this.notifyAll();
+		Thread current = Thread.currentThread();
+		if(owner.get() != current) {
+			return;
+		}
+		for(;;) {
+			Node next = waiters.poll();
+			if(next == null) {
+				owner.set(null);
+				//在poll之后刚刚入队的线程可能已经被挂起，唤醒队首的线程，让它自己去抢锁
+				Node head = waiters.peek();
+				if(head != null) {
+					LockSupport.unpark(head.thread);
+				}
+				return;
+			}
+			//先通过CAS修改Node的状态，保证不会把锁交给一个已经放弃等待的线程，在修改owner之前锁仍然属于当前线程
+			if(next.grant()) {
+				owner.set(next.thread);
+				LockSupport.unpark(next.thread);
+				return;
 			}
+			//该Node已经被取消，继续寻找下一个
 		}
-		
 	}
 
 	@Override
 	public List<Thread> getBlockedThreads() {
-		return Collections.unmodifiableList(blockedList);
+		List<Thread> blockedThreads = new ArrayList<>();
+		for(Node node : waiters) {
+			if(node.status == Node.WAITING) {
+				blockedThreads.add(node.thread);
+			}
+		}
+		return Collections.unmodifiableList(blockedThreads);
+	}
+
+	private boolean tryAcquire() {
+		//已经有线程在排队时不允许插队
+		return waiters.isEmpty() && owner.compareAndSet(null, Thread.currentThread());
+	}
+	/**
+	 * 在队列中等待，直到获得锁、超时或者被中断
+	 * @param deadline 截止时间，为0时永不超时
+	 * @return 超时返回false
+	 * @throws InterruptedException
+	 */
+	private boolean acquireQueued(long deadline) throws InterruptedException {
+		Thread current = Thread.currentThread();
+		Node node = new Node(current);
+		waiters.offer(node);
+		int spinLimit = spins;
+		int spinCount = 0;
+		for(;;) {
+			if(node.status == Node.GRANTED) {
+				//锁已经被unlock交给了当前线程
+				awaitOwnership(current);
+				adaptSpins(spinCount < spinLimit);
+				return true;
+			}
+			//队首的线程在锁被释放时自己去抢锁
+			if(waiters.peek() == node && owner.compareAndSet(null, current)) {
+				node.grant();
+				waiters.remove(node);
+				adaptSpins(spinCount < spinLimit);
+				return true;
+			}
+			if(spinCount < spinLimit) {
+				spinCount++;
+				continue;
+			}
+			if(deadline == 0L) {
+				LockSupport.park(this);
+			}else {
+				long remainingNanos = deadline - System.nanoTime();
+				if(remainingNanos <= 0) {
+					return cancel(node, false);
+				}
+				LockSupport.parkNanos(this, remainingNanos);
+			}
+			if(Thread.interrupted()) {
+				cancel(node, true);
+				return true;
+			}
+		}
+	}
+	/**
+	 * 取消排队，如果在取消之前锁已经被交给了当前线程，则视为成功获得了锁
+	 * @param node
+	 * @param interrupted
+	 * @return 是否获得了锁
+	 * @throws InterruptedException
+	 */
+	private boolean cancel(Node node, boolean interrupted) throws InterruptedException {
+		if(!node.cancel()) {
+			awaitOwnership(Thread.currentThread());
+			if(interrupted) {
+				//已经获得了锁，保留中断状态
+				Thread.currentThread().interrupt();
+			}
+			return true;
+		}
+		waiters.remove(node);
+		//当前线程可能刚好位于队首，此时锁已经被释放，需要唤醒新的队首线程
+		Node head = waiters.peek();
+		if(head != null && owner.get() == null) {
+			LockSupport.unpark(head.thread);
+		}
+		if(interrupted) {
+			throw new InterruptedException();
+		}
+		return false;
+	}
+	//Node的状态被修改为GRANTED之后，unlock的线程会紧接着修改owner，等待的时间非常短
+	private void awaitOwnership(Thread current) {
+		while(owner.get() != current) {
+			Thread.yield();
+		}
+	}
+	//在自旋期间获得了锁则增加自旋次数，否则减少
+	private void adaptSpins(boolean acquiredWhileSpinning) {
+		int current = spins;
+		if(acquiredWhileSpinning) {
+			if(current < MAX_SPINS) {
+				spins = Math.min(MAX_SPINS, Math.max(1, current << 1));
+			}
+		}else if(current > MIN_SPINS) {
+			spins = current >>> 1;
+		}
 	}
 
+	private static final class Node {
+
+		private final static int WAITING = 0;
+
+		private final static int GRANTED = 1;
+
+		private final static int CANCELLED = 2;
+
+		private final static AtomicIntegerFieldUpdater<Node> STATUS = AtomicIntegerFieldUpdater.newUpdater(Node.class, "status");
+
+		private final Thread thread;
+
+		private volatile int status = WAITING;
+
+		Node(Thread thread) {
+			this.thread = thread;
+		}
+
+		boolean grant() {
+			return STATUS.compareAndSet(this, WAITING, GRANTED);
+		}
+
+		boolean cancel() {
+			return STATUS.compareAndSet(this, WAITING, CANCELLED);
+		}
+	}
 }
@@ -1,4 +1,6 @@
 package com.lbq.concurrent.chapter17;
+
+import java.util.function.Supplier;
 /**
  * ReadWriteLock虽然名字中有lock，但是它并不是lock，它主要是用于创建read lock和write lock的，
  * 并且提供了查询功能用于查询当前有多少个Reader和Writer以及waiting中的writer，根据我们在前文中的分析，
@@ -9,6 +11,11 @@ package com.lbq.concurrent.chapter17;
  * 3.getWritingWriters():获取当前有多少个线程正在进行写的操作，最多是一个。
  * 4.getWaitingWriters():获取当前有多少个线程由于获得写锁而导致阻塞。
  * 5.getReadingReaders():获取当前有多少个线程正在进行读的操作。
+ * 6.tryOptimisticRead():获取一个乐观读的stamp(版本号)，乐观读不会修改任何共享的变量，因此读操作可以随着CPU核数线性扩展。
+ * 7.validate(long stamp):判断获取stamp之后是否有写线程获得过写锁，如果没有，则读取到的数据是一致的。
+ * 8.optimisticRead(Supplier<T> reader):先进行乐观读，只有在validate失败时才会使用读锁重新读取一次，对于几乎不会被写的数据，
+ *   绝大多数的读操作都不需要加锁，需要注意的是在乐观读期间数据可能正在被修改，reader必须能够容忍读到不一致的数据(不能因此抛出异常或者陷入死循环)，
+ *   不一致的结果会因为validate失败而被丢弃。
  * @author 14378
  *
  */
@@ -23,6 +30,27 @@ public interface ReadWriteLock {
 	int getWaitingWriters();
 	//获取当前有多少线程正在执行读操作
 	int getReadingReaders();
+	//获取乐观读的stamp，如果当前有线程持有写锁则返回0
+	long tryOptimisticRead();
+	//判断stamp之后是否有写操作发生，stamp为0时总是返回false
+	boolean validate(long stamp);
+	//先进行乐观读，只有在发生冲突时才会退化成使用读锁
+	default <T> T optimisticRead(Supplier<T> reader) throws InterruptedException {
+		long stamp = tryOptimisticRead();
+		if(stamp != 0) {
+			T result = reader.get();
+			if(validate(stamp)) {
+				return result;
+			}
+		}
+		Lock readLock = readLock();
+		readLock.lock();
+		try {
+			return reader.get();
+		} finally {
+			readLock.unlock();
+		}
+	}
 	//工厂方法，创建ReadWriteLock
 	static ReadWriteLock readWriteLock() {
 		return new ReadWriteLockImpl();
@@ -31,4 +59,8 @@ public interface ReadWriteLock {
 	static ReadWriteLock readWriteLock(boolean preferWriter) {
 		return new ReadWriteLockImpl(preferWriter);
 	}
+	//工厂方法，创建读操作可扩展的ScalableReadWriteLock，适用于读多写少并且读线程很多的场景
+	static ReadWriteLock scalableReadWriteLock() {
+		return new ScalableReadWriteLock();
+	}
 }
@@ -0,0 +1,204 @@
+package com.lbq.concurrent.chapter17;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+/**
+ * 与3.9.3节中的StampedLockExample4一样，使用@Group将读写线程放在同一组中进行基准测试，
+ * 比较ReadWriteLockImpl、ScalableReadWriteLock、ReentrantReadWriteLock以及StampedLock在读多写少的情况下的吞吐量，
+ * 可以通过修改@GroupThreads(n)的n值对比不同读写线程数量下的性能表现，读线程越多，ScalableReadWriteLock的优势越明显，
+ * 而ReadWriteLockImpl的读线程全部在竞争同一个MUTEX，吞吐量几乎不会随着读线程的增加而增加。
+ * scalableOptimistic和stampedOptimistic两组则对比了两者的乐观读。
+ * @author 14378
+ *
+ */
+@Measurement(iterations = 10)
+@Warmup(iterations = 10)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ReadWriteLockBenchmark {
+
+	@State(Scope.Group)
+	public static class Test {
+		private int x = 10;
+		private final ReadWriteLock mutexLock = ReadWriteLock.readWriteLock();
+		private final ReadWriteLock scalableLock = ReadWriteLock.scalableReadWriteLock();
+		private final ReentrantReadWriteLock reentrantLock = new ReentrantReadWriteLock();
+		private final StampedLock stampedLock = new StampedLock();
+		
+		public void inc(ReadWriteLock readWriteLock) throws InterruptedException {
+			Lock writeLock = readWriteLock.writeLock();
+			writeLock.lock();
+			try {
+				x++;
+			} finally {
+				writeLock.unlock();
+			}
+		}
+		
+		public int get(ReadWriteLock readWriteLock) throws InterruptedException {
+			Lock readLock = readWriteLock.readLock();
+			readLock.lock();
+			try {
+				return x;
+			} finally {
+				readLock.unlock();
+			}
+		}
+		
+		public void reentrantInc() {
+			reentrantLock.writeLock().lock();
+			try {
+				x++;
+			} finally {
+				reentrantLock.writeLock().unlock();
+			}
+		}
+		
+		public int reentrantGet() {
+			reentrantLock.readLock().lock();
+			try {
+				return x;
+			} finally {
+				reentrantLock.readLock().unlock();
+			}
+		}
+		
+		public int optimisticGet(ReadWriteLock readWriteLock) throws InterruptedException {
+			long stamp = readWriteLock.tryOptimisticRead();
+			int value = x;
+			if(readWriteLock.validate(stamp)) {
+				return value;
+			}
+			return get(readWriteLock);
+		}
+		
+		public void stampedInc() {
+			long stamped = stampedLock.writeLock();
+			try {
+				x++;
+			} finally {
+				stampedLock.unlockWrite(stamped);
+			}
+		}
+		
+		public int stampedOptimisticGet() {
+			long stamped = stampedLock.tryOptimisticRead();
+			int value = x;
+			if(stampedLock.validate(stamped)) {
+				return value;
+			}
+			stamped = stampedLock.readLock();
+			try {
+				return x;
+			} finally {
+				stampedLock.unlockRead(stamped);
+			}
+		}
+		
+		public int stampedGet() {
+			long stamped = stampedLock.readLock();
+			try {
+				return x;
+			} finally {
+				stampedLock.unlockRead(stamped);
+			}
+		}
+	}
+	@GroupThreads(1)
+	@Group("mutexRWLock")
+	@Benchmark
+	public void mutexInc(Test test) throws InterruptedException {
+		test.inc(test.mutexLock);
+	}
+	@GroupThreads(15)
+	@Group("mutexRWLock")
+	@Benchmark
+	public void mutexGet(Test test, Blackhole blackhole) throws InterruptedException {
+		blackhole.consume(test.get(test.mutexLock));
+	}
+	@GroupThreads(1)
+	@Group("scalableRWLock")
+	@Benchmark
+	public void scalableInc(Test test) throws InterruptedException {
+		test.inc(test.scalableLock);
+	}
+	@GroupThreads(15)
+	@Group("scalableRWLock")
+	@Benchmark
+	public void scalableGet(Test test, Blackhole blackhole) throws InterruptedException {
+		blackhole.consume(test.get(test.scalableLock));
+	}
+	@GroupThreads(1)
+	@Group("reentrantRWLock")
+	@Benchmark
+	public void reentrantInc(Test test) {
+		test.reentrantInc();
+	}
+	@GroupThreads(15)
+	@Group("reentrantRWLock")
+	@Benchmark
+	public void reentrantGet(Test test, Blackhole blackhole) {
+		blackhole.consume(test.reentrantGet());
+	}
+	@GroupThreads(1)
+	@Group("stampedLock")
+	@Benchmark
+	public void stampedInc(Test test) {
+		test.stampedInc();
+	}
+	@GroupThreads(15)
+	@Group("stampedLock")
+	@Benchmark
+	public void stampedGet(Test test, Blackhole blackhole) {
+		blackhole.consume(test.stampedGet());
+	}
+	@GroupThreads(1)
+	@Group("scalableOptimistic")
+	@Benchmark
+	public void scalableOptimisticInc(Test test) throws InterruptedException {
+		test.inc(test.scalableLock);
+	}
+	@GroupThreads(15)
+	@Group("scalableOptimistic")
+	@Benchmark
+	public void scalableOptimisticGet(Test test, Blackhole blackhole) throws InterruptedException {
+		blackhole.consume(test.optimisticGet(test.scalableLock));
+	}
+	@GroupThreads(1)
+	@Group("stampedOptimistic")
+	@Benchmark
+	public void stampedOptimisticInc(Test test) {
+		test.stampedInc();
+	}
+	@GroupThreads(15)
+	@Group("stampedOptimistic")
+	@Benchmark
+	public void stampedOptimisticGet(Test test, Blackhole blackhole) {
+		blackhole.consume(test.stampedOptimisticGet());
+	}
+	
+	public static void main(String[] args) throws RunnerException {
+		Options opts = new OptionsBuilder()
+				.include(ReadWriteLockBenchmark.class.getSimpleName())
+				.forks(1)
+				.build();
+		new Runner(opts).run();
+	}
+}
@@ -1,4 +1,6 @@
 package com.lbq.concurrent.chapter17;
+
+import java.lang.invoke.VarHandle;
 /**
  * 相对于Lock，ReadWriteLockImpl更像是一个工厂类，可以通过它创建不同类型的锁，我们将ReadWriteLockImpl设计为包可见的类，
  * 其主要目的是不想对外暴露更多的细节，在ReadWriteLockImpl中还定义了非常多的包可见方法。
@@ -20,6 +22,12 @@ class ReadWriteLockImpl implements ReadWriteLock {
 	private int readingReaders = 0;
 	//read和write的偏好 设置
 	private boolean preferWriter;
+	//版本号，写线程获得写锁和释放写锁时各增加一次，因此为奇数时表示有线程正在写，只会在MUTEX中被修改，从2开始使得0不会成为有效的stamp
+	private volatile long version = 2;
+	//读锁和写锁都是无状态的，只需要创建一次
+	private final Lock readLock = new ReadLock(this);
+	
+	private final Lock writeLock = new WriteLock(this);
 	//默认情况下perferWriter为true
 	public ReadWriteLockImpl() {
 		this(true);
@@ -31,12 +39,12 @@ class ReadWriteLockImpl implements ReadWriteLock {
 	//创建read lock
 	@Override
 	public Lock readLock() {
-		return new ReadLock(this);
+		return readLock;
 	}
 	//创建write lock
 	@Override
 	public Lock writeLock() {
-		return new WriteLock(this);
+		return writeLock;
 	}
 	//使写线程的数量增加
 	void incrementWritingWriters() {
@@ -77,6 +85,23 @@ class ReadWriteLockImpl implements ReadWriteLock {
 	public int getReadingReaders() {
 		return readingReaders;
 	}
+	//增加版本号，调用者必须持有MUTEX
+	void incrementVersion() {
+		version++;
+	}
+	
+	@Override
+	public long tryOptimisticRead() {
+		long stamp = version;
+		return (stamp & 1) == 0 ? stamp : 0;
+	}
+	
+	@Override
+	public boolean validate(long stamp) {
+		//load fence，保证reader对数据的读取不会被重排序到对version的再次读取之后，与StampedLock.validate相同
+		VarHandle.acquireFence();
+		return stamp != 0 && version == stamp;
+	}
 	//获取对象锁
 	Object getMutex() {
 		return MUTEX;
@@ -0,0 +1,181 @@
+package com.lbq.concurrent.chapter17;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+/**
+ * ReadWriteLockImpl中读锁的获取和释放都需要进入同一个MUTEX的monitor并且修改共享的readingReaders，
+ * 读线程之间的竞争与写线程一样激烈，因此在核数较多的机器上读锁几乎无法扩展，ScalableReadWriteLock对读的路径做了如下改进：
+ * 1.读线程的数量被分散记录在多个计数器(reader indicator)中，线程按照其id选择计数器，不同的计数器之间填充了足够的空间，
+ *   避免位于同一个缓存行上(伪共享)，读线程在没有写线程的情况下加锁和解锁各自只需要一次几乎没有竞争的原子操作以及一次volatile读。
+ * 2.写线程之间仍然通过MUTEX互斥，获得写的资格之后首先设置writing标识，然后等待所有计数器之和变为0(将已经进入的读线程排空)，
+ *   读线程在增加计数器之后如果发现writing标识，则撤销本次计数并在MUTEX中等待写线程结束。
+ *   读线程的"先计数再检查writing"与写线程的"先设置writing再检查计数"都是volatile操作，二者不会同时错过对方。
+ * 3.只有已经宣告的写线程(最多一个)才会阻挡新的读线程，其余排队中的写线程不会影响读操作，在写线程释放锁之后，读线程可以立即进入。
+ * 4.读线程释放锁时，如果发现有写线程正在排空读线程，则将其唤醒，写线程在等待期间会被park，而不是忙等。
+ * 5.readLock()和writeLock()返回的是构造时创建好的锁对象，每次调用不会分配新的对象。
+ * 6.乐观读基于version，写线程获得写的资格以及释放写锁时各对version进行一次原子的自增(为奇数时表示正在写)，
+ *   乐观读只需要读取两次version，不会对任何共享的变量进行写操作，validate在再次读取version之前通过VarHandle.acquireFence()插入一个load fence。
+ * 
+ * 由于读线程在发现写线程之后会撤销计数，getReadingReaders在某一瞬间的返回值可能会包含这些正在撤销的读线程。
+ * 与ReadWriteLockImpl、ReentrantReadWriteLock以及StampedLock的性能对比可以参考ReadWriteLockBenchmark。
+ * @author 14378
+ *
+ */
+class ScalableReadWriteLock implements ReadWriteLock {
+	//每个计数器占用的long的个数，16个long即128字节，足以避免相邻的计数器位于同一个缓存行
+	private final static int PADDING = 16;
+	
+	private final static int STRIPES = ceilingPowerOfTwo(Runtime.getRuntime().availableProcessors() * 2);
+	
+	private final Object MUTEX = new Object();
+	//分段的读线程计数器
+	private final AtomicLongArray readers = new AtomicLongArray(STRIPES * PADDING);
+	//是否有写线程已经获得了写的资格(正在排空读线程或者正在写)
+	private volatile boolean writing;
+	//正在排空读线程的写线程，读线程释放锁时将其唤醒
+	private volatile Thread writer;
+	//乐观读的版本号，从2开始使得0不会成为有效的stamp
+	private final AtomicLong version = new AtomicLong(2);
+	//当前有多少个线程正在等待写入，只会在MUTEX中被修改
+	private volatile int waitingWriters;
+	
+	private final Lock readLock = new ScalableReadLock();
+	
+	private final Lock writeLock = new ScalableWriteLock();
+	
+	@Override
+	public Lock readLock() {
+		return readLock;
+	}
+
+	@Override
+	public Lock writeLock() {
+		return writeLock;
+	}
+
+	@Override
+	public int getWritingWriters() {
+		return writing ? 1 : 0;
+	}
+
+	@Override
+	public int getWaitingWriters() {
+		return waitingWriters;
+	}
+
+	@Override
+	public int getReadingReaders() {
+		return (int) readerCount();
+	}
+	
+	@Override
+	public long tryOptimisticRead() {
+		long stamp = version.get();
+		return (stamp & 1) == 0 ? stamp : 0;
+	}
+	
+	@Override
+	public boolean validate(long stamp) {
+		//load fence，保证reader对数据的读取不会被重排序到对version的再次读取之后，与StampedLock.validate相同
+		VarHandle.acquireFence();
+		return stamp != 0 && version.get() == stamp;
+	}
+	
+	private long readerCount() {
+		long count = 0;
+		for(int i = 0; i < STRIPES; i++) {
+			count += readers.get(i * PADDING);
+		}
+		return count;
+	}
+	//同一个线程总是使用同一个计数器，即使由其他线程释放读锁，所有计数器之和仍然是正确的
+	private static int stripeIndex() {
+		return ((int) Thread.currentThread().getId() & (STRIPES - 1)) * PADDING;
+	}
+	
+	private static int ceilingPowerOfTwo(int x) {
+		return 1 << (32 - Integer.numberOfLeadingZeros(x - 1));
+	}
+	
+	private class ScalableReadLock implements Lock {
+
+		@Override
+		public void lock() throws InterruptedException {
+			int index = stripeIndex();
+			for(;;) {
+				readers.getAndIncrement(index);
+				if(!writing) {
+					//没有写线程，成功获得读锁
+					return;
+				}
+				//写线程正在排空读线程，撤销本次计数，避免写线程一直等待
+				release(index);
+				synchronized(MUTEX) {
+					while(writing) {
+						MUTEX.wait();
+					}
+				}
+			}
+		}
+
+		@Override
+		public void unlock() {
+			release(stripeIndex());
+		}
+		
+		private void release(int index) {
+			readers.getAndDecrement(index);
+			if(writing) {
+				//唤醒正在排空读线程的写线程
+				Thread writer = ScalableReadWriteLock.this.writer;
+				if(writer != null) {
+					LockSupport.unpark(writer);
+				}
+			}
+		}
+	}
+	
+	private class ScalableWriteLock implements Lock {
+
+		@Override
+		public void lock() throws InterruptedException {
+			synchronized(MUTEX) {
+				waitingWriters++;
+				try {
+					//写线程之间互斥
+					while(writing) {
+						MUTEX.wait();
+					}
+				} finally {
+					waitingWriters--;
+				}
+				writer = Thread.currentThread();
+				writing = true;
+				//使乐观读的stamp失效，必须在写线程修改数据之前完成
+				version.incrementAndGet();
+			}
+			//排空已经获得读锁的线程
+			while(readerCount() != 0) {
+				LockSupport.park(this);
+				if(Thread.interrupted()) {
+					//放弃获取写锁
+					unlock();
+					throw new InterruptedException();
+				}
+			}
+		}
+
+		@Override
+		public void unlock() {
+			synchronized(MUTEX) {
+				version.incrementAndGet();
+				writer = null;
+				writing = false;
+				//唤醒等待的读线程以及写线程
+				MUTEX.notifyAll();
+			}
+		}
+	}
+}
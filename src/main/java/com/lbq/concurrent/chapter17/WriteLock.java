@@ -32,6 +32,8 @@ public class WriteLock implements Lock {
 			}
 			//将正在写入的线程数量加一
 			readWriteLock.incrementWritingWriters();
+			//使乐观读的stamp失效
+			readWriteLock.incrementVersion();
 		}
 		
 	}
@@ -39,6 +41,8 @@ public class WriteLock implements Lock {
 	@Override
 	public void unlock() {
 		synchronized(readWriteLock.getMutex()){
+			//写操作已经完成，版本号重新变为偶数
+			readWriteLock.incrementVersion();
 			//减少正在写入锁的线程计数器
 			readWriteLock.decrementWritingWriters();
 			//将偏好状态修改为false，可以使得读锁被最快速的获得
@@ -1,7 +1,15 @@
 package com.lbq.concurrent.chapter19;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 /**
  * Future接口设计
  * Future提供了获取计算结果和判断任务是否完成的两个接口，其中获取计算结果将会导致调用阻塞(在任务还未完成的情况下)。
+ * 
+ * 针对19.5节中提到的缺陷，Future接口又增加了如下几个方法：
+ * 1.带有超时时间的get方法，在规定的时间内没有得到结果时会抛出TimeoutException。
+ * 2.cancel方法用于取消尚未完成的任务，任务被取消之后get方法会抛出CancellationException。
+ * 3.addListener方法用于注册任务完成(包括正常完成、异常完成以及被取消)时的回调，调用者无需通过get进入阻塞。
  * @author 14378
  *
  * @param <T>
@@ -9,6 +17,14 @@ package com.lbq.concurrent.chapter19;
 public interface Future<T> {
 	//返回计算后的结果，该方法会陷入阻塞状态
 	T get() throws InterruptedException;
+	//返回计算后的结果，最多阻塞timeout时间，超时后抛出TimeoutException
+	T get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException;
 	//判断任务是否已经被执行完成
 	boolean done();
+	//取消尚未完成的任务，如果任务已经完成则返回false
+	boolean cancel();
+	//判断任务是否已经被取消
+	boolean isCancelled();
+	//注册任务完成时的回调，如果任务已经完成则会在当前线程中立即执行回调
+	void addListener(Callback<Future<T>> listener);
 }
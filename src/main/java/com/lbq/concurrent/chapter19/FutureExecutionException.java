@@ -0,0 +1,15 @@
+package com.lbq.concurrent.chapter19;
+/**
+ * 当任务执行过程中出现异常时，FutureTask会以异常的方式完成，此时调用get方法将会抛出FutureExecutionException，
+ * 通过getCause()可以获得任务执行时抛出的真实异常。
+ * @author 14378
+ *
+ */
+public class FutureExecutionException extends RuntimeException {
+
+	private static final long serialVersionUID = -6210573820218739361L;
+
+	public FutureExecutionException(Throwable cause) {
+		super(cause);
+	}
+}
@@ -1,4 +1,6 @@
 package com.lbq.concurrent.chapter19;
+
+import java.util.concurrent.Executor;
 /**
  * FutureService接口设计
  * FutureService主要用于提交任务，提交的任务主要有两种，第一种不需要返回值，第二种则需要获得最终得计算结果。
@@ -20,4 +22,8 @@ public interface FutureService<IN, OUT> {
 	static <T, R> FutureService<T, R> newService() {
 		return new FutureServiceImpl<>();
 	}
+	//使用指定的Executor(比如线程池)执行提交的任务
+	static <T, R> FutureService<T, R> newService(Executor executor) {
+		return new FutureServiceImpl<>(executor);
+	}
 }
@@ -1,10 +1,15 @@
 package com.lbq.concurrent.chapter19;
 
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 /**
  * FutureServiceImpl的主要作用在于当提交任务时创建一个新的线程来受理该任务，进而达到任务异步执行的效果。
  * 
  * 在FutureServiceImpl的submit方法中，分别启动了新的线程运行任务，起到了异步的作用，在任务最终运行成功之后，会通知FutureTask任务已完成。
+ * 
+ * 每次提交任务都创建一个新的线程，在扇出(fan-out)请求的场景下会创建大量的线程，因此FutureServiceImpl还可以在构造时指定一个Executor(比如线程池)，
+ * 任务将会交给Executor执行，不指定Executor时仍然保持为每个任务创建一个新线程的行为。
+ * 另外，任务执行失败时FutureTask会以异常的方式完成，任务在执行之前被取消则不会再执行。
  * @author 14378
  *
  * @param <IN>
@@ -15,6 +20,17 @@ public class FutureServiceImpl<IN, OUT> implements FutureService<IN, OUT> {
 	private final static String FUTURE_THREAD_PREFIX = "FUTURE-";
 	
 	private final AtomicInteger nextCounter = new AtomicInteger(0);
+	//任务的执行者
+	private final Executor executor;
+	
+	public FutureServiceImpl() {
+		//为每个任务创建一个新的线程
+		this.executor = runnable -> new Thread(runnable, getNextName()).start();
+	}
+	
+	public FutureServiceImpl(Executor executor) {
+		this.executor = executor;
+	}
 	
 	private String getNextName() {
 		return FUTURE_THREAD_PREFIX + nextCounter.getAndIncrement();
@@ -23,36 +39,47 @@ public class FutureServiceImpl<IN, OUT> implements FutureService<IN, OUT> {
 	@Override
 	public Future<?> submit(Runnable runnable) {
 		final FutureTask<Void> future = new FutureTask<>();
-		new Thread(() -> {
-			runnable.run();
-			//任务执行结束之后将null作为结果传给future
-			future.finish(null);
-		}, getNextName()).start();
+		executor.execute(() -> {
+			if(future.isCancelled()) {
+				return;
+			}
+			try {
+				runnable.run();
+				//任务执行结束之后将null作为结果传给future
+				future.finish(null);
+			} catch(Throwable e) {
+				future.finishExceptionally(e);
+			}
+		});
 		return future;
 	}
 
 	@Override
 	public Future<OUT> submit(Task<IN, OUT> task, IN input) {
-		final FutureTask<OUT> future = new FutureTask<>();
-		new Thread(() -> {
-			OUT result = task.get(input);
-			//任务执行结束之后，将真实的结果通过finish方法传递给future
-			future.finish(result);
-		}).start();
-		return future;
+		return submit(task, input, null);
 	}
 	//增加回调接口Callback，当任务执行结束之后，Callback会得到执行
 	@Override
 	public Future<OUT> submit(Task<IN, OUT> task, IN input, Callback<OUT> callback) {
 		final FutureTask<OUT> future = new FutureTask<>();
-		new Thread(() -> {
-			OUT result = task.get(input);
+		executor.execute(() -> {
+			if(future.isCancelled()) {
+				return;
+			}
+			OUT result;
+			try {
+				result = task.get(input);
+			} catch(Throwable e) {
+				future.finishExceptionally(e);
+				return;
+			}
+			//任务执行结束之后，将真实的结果通过finish方法传递给future
 			future.finish(result);
 			//执行回调接口
 			if(null != callback) {
 				callback.call(result);
 			}
-		}, getNextName()).start();
+		});
 		return future;
 	}
 
@@ -1,48 +1,254 @@
 package com.lbq.concurrent.chapter19;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 /**
  * FutureTask是Future的一个实现，除了实现Future中定义的get()以及done()方法，
  * 还额外增加了protected方法finish，该方法主要用于接收任务被完成的通知。
- * FutureTask中充分利用了线程间的通信wait和notifyAll，当前任务没有被完成之前通过get方法获取结果，调用者进入阻塞，直到任务完成并接收到其他线程的唤醒信号，
- * finish方法接收到了任务完成通知，唤醒了因调用get而进入阻塞的线程。
+ * 如果任务在执行的过程中出现了异常，则可以通过finishExceptionally方法完成FutureTask，此时get方法会抛出FutureExecutionException。
+ * 
+ * 最初的FutureTask使用对象锁的wait和notifyAll实现线程间的通信，并且isDone并没有被volatile修饰，done()方法可能看不到最新的状态，
+ * 在这里做了如下改进：
+ * 1.任务的状态state使用原子变量维护，NEW状态只能被finish、finishExceptionally以及cancel中的一个通过CAS修改，天然具备balking的语义。
+ * 2.调用get方法的线程以及注册的回调都会被压入一个无锁的栈(waiters)中，调用get的线程通过LockSupport.park挂起，
+ *   任务完成时只会逐个唤醒在当前任务上等待的线程，并执行注册的回调，不再需要获取对象锁。
+ * 3.get方法支持超时，任务支持被取消。
+ * 4.超时或者被中断而放弃等待的节点会像j.u.c.FutureTask的removeWaiter一样从栈中被摘除，反复超时的get不会使栈无限增长；
+ *   回调抛出的异常会交给当前线程的UncaughtExceptionHandler处理，不会影响其他等待的线程以及回调，也不会从finish中抛出。
  * @author 14378
  *
  * @param <T>
  */
 public class FutureTask<T> implements Future<T> {
-	//计算结果
+	//任务刚被创建，尚未完成
+	private final static int NEW = 0;
+	//正在设置计算结果
+	private final static int COMPLETING = 1;
+	//任务正常完成
+	private final static int NORMAL = 2;
+	//任务执行失败
+	private final static int EXCEPTIONAL = 3;
+	//任务被取消
+	private final static int CANCELLED = 4;
+	//waiters被置为DONE之后说明等待线程已经全部被唤醒，不能再压入新的节点
+	private final static Node<?> DONE = new Node<>(null, null);
+	//任务的状态
+	private final AtomicInteger state = new AtomicInteger(NEW);
+	//等待线程以及回调组成的栈
+	private final AtomicReference<Node<T>> waiters = new AtomicReference<>();
+	//计算结果，在state被设置为NORMAL之前写入，由state的volatile语义保证可见性
 	private T result;
-	//任务是否完成
-	private boolean isDone = false;
-	//定义对象锁
-	private final Object LOCK = new Object();
+	//任务执行失败的原因
+	private Throwable cause;
 	
 	@Override
 	public T get() throws InterruptedException {
-		synchronized (LOCK) {
-			//当任务还没完成时，调用get方法会被挂起而进入阻塞
-			while(!isDone) {
-				LOCK.wait();
-			}
-			//返回最终计算结果
-			return result;
+		//当任务还没完成时，调用get方法会被挂起而进入阻塞
+		int s = awaitDone(false, 0L);
+		return report(s);
+	}
+	
+	@Override
+	public T get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+		int s = awaitDone(true, unit.toNanos(timeout));
+		if(s <= COMPLETING) {
+			throw new TimeoutException("The future is not done in " + timeout + " " + unit);
 		}
+		return report(s);
 	}
 	//返回当前任务是否已经完成
 	@Override
 	public boolean done() {
-		return isDone;
+		return state.get() != NEW;
+	}
+	
+	@Override
+	public boolean cancel() {
+		if(!state.compareAndSet(NEW, CANCELLED)) {
+			return false;
+		}
+		this.releaseWaiters();
+		return true;
+	}
+	
+	@Override
+	public boolean isCancelled() {
+		return state.get() == CANCELLED;
+	}
+	
+	@Override
+	public void addListener(Callback<Future<T>> listener) {
+		Node<T> node = new Node<>(null, listener);
+		if(!push(node)) {
+			//任务已经完成，直接执行回调
+			listener.call(this);
+		}
 	}
 	//finish方法主要用于为FutureTask设置计算结果
 	protected void finish(T result) {
-		synchronized(LOCK) {
-			//balking设计模式
-			if(isDone) {
-				return;
-			}
-			//计算完成，为result指定结果，并且将isDone设为true，同时唤醒阻塞中的线程
+		//balking设计模式，只有NEW状态的任务才能被完成
+		if(state.compareAndSet(NEW, COMPLETING)) {
 			this.result = result;
-			this.isDone = true;
-			LOCK.notifyAll();
+			state.set(NORMAL);
+			this.releaseWaiters();
+		}
+	}
+	//finishExceptionally方法主要用于通知FutureTask任务执行失败
+	protected void finishExceptionally(Throwable cause) {
+		if(state.compareAndSet(NEW, COMPLETING)) {
+			this.cause = cause;
+			state.set(EXCEPTIONAL);
+			this.releaseWaiters();
+		}
+	}
+	
+	private T report(int s) {
+		if(s == NORMAL) {
+			return result;
+		}
+		if(s == CANCELLED) {
+			throw new CancellationException("The future is cancelled.");
+		}
+		//任务以异常的方式完成
+		throw new FutureExecutionException(cause);
+	}
+	/**
+	 * 等待任务完成，返回任务的状态，如果timed为true并且等待超时，则返回的状态小于等于COMPLETING
+	 * @param timed
+	 * @param nanos
+	 * @return
+	 * @throws InterruptedException
+	 */
+	private int awaitDone(boolean timed, long nanos) throws InterruptedException {
+		final long deadline = timed ? System.nanoTime() + nanos : 0L;
+		Node<T> node = null;
+		for(;;) {
+			int s = state.get();
+			if(s > COMPLETING) {
+				return s;
+			}
+			if(s == COMPLETING) {
+				//结果马上就会被设置，没有必要挂起
+				Thread.yield();
+				continue;
+			}
+			if(Thread.interrupted()) {
+				removeWaiter(node);
+				throw new InterruptedException();
+			}
+			if(node == null) {
+				node = new Node<>(Thread.currentThread(), null);
+				if(!push(node)) {
+					//等待线程已经被全部唤醒，重新检查状态即可
+					node = null;
+					continue;
+				}
+			}
+			if(timed) {
+				long remaining = deadline - System.nanoTime();
+				if(remaining <= 0L) {
+					removeWaiter(node);
+					return state.get();
+				}
+				LockSupport.parkNanos(this, remaining);
+			}else {
+				LockSupport.park(this);
+			}
+		}
+	}
+	/**
+	 * 清除放弃等待的节点中的线程，并将栈中所有线程已经被清除的节点摘除，
+	 * 与其他线程并发摘除时CAS失败或者前驱节点也已经被清除，则从栈顶重新遍历
+	 * @param node
+	 */
+	private void removeWaiter(Node<T> node) {
+		if(node == null) {
+			return;
+		}
+		node.thread = null;
+		retry:
+		for(;;) {
+			Node<T> pred = null;
+			Node<T> q = waiters.get();
+			while(q != null && q != DONE) {
+				Node<T> next = q.next;
+				if(q.thread != null || q.listener != null) {
+					pred = q;
+				}else if(pred != null) {
+					pred.next = next;
+					if(pred.thread == null && pred.listener == null) {
+						continue retry;
+					}
+				}else if(!waiters.compareAndSet(q, next)) {
+					continue retry;
+				}
+				q = next;
+			}
+			return;
+		}
+	}
+	/**
+	 * 将节点压入栈中，如果任务已经完成(waiters为DONE)则返回false
+	 * @param node
+	 * @return
+	 */
+	private boolean push(Node<T> node) {
+		for(;;) {
+			Node<T> head = waiters.get();
+			if(head == DONE) {
+				return false;
+			}
+			node.next = head;
+			if(waiters.compareAndSet(head, node)) {
+				return true;
+			}
+		}
+	}
+	/**
+	 * 唤醒在当前任务上等待的线程，并执行注册的回调
+	 */
+	@SuppressWarnings("unchecked")
+	private void releaseWaiters() {
+		Node<T> head = waiters.getAndSet((Node<T>) DONE);
+		for(Node<T> node = head; node != null; node = node.next) {
+			if(node.listener != null) {
+				try {
+					node.listener.call(this);
+				} catch (Throwable e) {
+					//某个回调失败不能影响其他等待的线程以及回调
+					Thread current = Thread.currentThread();
+					current.getUncaughtExceptionHandler().uncaughtException(current, e);
+				}
+			}else {
+				Thread thread = node.thread;
+				if(thread != null) {
+					node.thread = null;
+					LockSupport.unpark(thread);
+				}
+			}
+		}
+	}
+	/**
+	 * 栈中的节点，要么是一个等待的线程，要么是一个回调
+	 * @author 14378
+	 *
+	 * @param <T>
+	 */
+	private static class Node<T> {
+		
+		volatile Thread thread;
+		
+		final Callback<Future<T>> listener;
+		
+		volatile Node<T> next;
+		
+		Node(Thread thread, Callback<Future<T>> listener) {
+			this.thread = thread;
+			this.listener = listener;
 		}
 	}
 }
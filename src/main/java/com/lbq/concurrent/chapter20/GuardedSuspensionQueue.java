@@ -1,6 +1,8 @@
 package com.lbq.concurrent.chapter20;
 
-import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 /**
  * Guarded Suspension 设计模式
  * 
@@ -19,35 +21,160 @@ import java.util.LinkedList;
  * 20.3 本章总结
  * Guarded Suspension设计模式并不复杂，但是它是很多其他线程设计模式的基础，比如生产者消费者模式，后文中的Thread Worker设计模式、Balking设计模式等，
  * 都可以看到Guarded Suspension模式的影子，Guarded Suspension的关注点在于临界值的条件是否满足，当到达设置的临界值时相关线程则会被挂起。
+ * 20.4 基于Condition的实现
+ * GuardedSuspensionQueue的两个临界值分别对应ReentrantLock的两个Condition：
+ * 1.支持泛型并且容量可以指定(默认为100)，数据存放在预先分配好的环形数组中，offer和take不会产生额外的对象。
+ * 2.生产者只在notFull上等待，消费者只在notEmpty上等待，offer之后只唤醒一个消费者，take之后只唤醒一个生产者，
+ *   并且是在修改了队列之后才进行通知。
+ * 3.提供了带超时的offer以及poll方法。
+ * 4.对于int类型的数据，可以使用IntGuardedSuspensionQueue，数据直接存放在int[]中，完全没有装箱的开销。
  * @author 14378
  *
+ * @param <E>
  */
-public class GuardedSuspensionQueue {
-	//定义存放Integer类型的queue
-	private final LinkedList<Integer> queue = new LinkedList<>();
-	//定义queue的最大容量为100
-	private final int LIMIT = 100;
+public class GuardedSuspensionQueue<E> {
+	//默认的最大容量
+	private final static int DEFAULT_CAPACITY = 100;
+	//存放数据的环形数组
+	private final Object[] items;
+	//下一次take的位置
+	private int takeIndex;
+	//下一次offer的位置
+	private int putIndex;
+	//队列中的元素个数
+	private int count;
+	
+	private final ReentrantLock lock = new ReentrantLock();
+	//队列不为空的条件，消费者在此等待
+	private final Condition notEmpty = lock.newCondition();
+	//队列没有满的条件，生产者在此等待
+	private final Condition notFull = lock.newCondition();
+	
+	public GuardedSuspensionQueue() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	public GuardedSuspensionQueue(int capacity) {
+		if(capacity <= 0) {
+			throw new IllegalArgumentException("the capacity must be positive.");
+		}
+		this.items = new Object[capacity];
+	}
 	//往queue中插入数据，如果queue中的元素超过了最大容量，则会陷入阻塞
-	public void offer(Integer data) throws InterruptedException {
-		synchronized(this) {
-			while(queue.size() >= LIMIT) {
-				this.wait();
+	public void offer(E data) throws InterruptedException {
+		checkNotNull(data);
+		lock.lockInterruptibly();
+		try {
+			while(count == items.length) {
+				notFull.await();
 			}
-			queue.addLast(data);
-			this.notifyAll();
+			enqueue(data);
+		} finally {
+			lock.unlock();
+		}
+	}
+	/**
+	 * 往queue中插入数据，如果queue已满则最多等待timeout的时间
+	 * @param data
+	 * @param timeout
+	 * @param unit
+	 * @return 超时返回false
+	 * @throws InterruptedException
+	 */
+	public boolean offer(E data, long timeout, TimeUnit unit) throws InterruptedException {
+		checkNotNull(data);
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while(count == items.length) {
+				if(nanos <= 0) {
+					return false;
+				}
+				nanos = notFull.awaitNanos(nanos);
+			}
+			enqueue(data);
+			return true;
+		} finally {
+			lock.unlock();
 		}
 	}
 	//从队列中获取元素，如果队列此时为空，则会使当前线程阻塞
-	public Integer take() throws InterruptedException {
-		synchronized(this) {
+	public E take() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
 			//判断如果队列为空
-			while(queue.isEmpty()) {
+			while(count == 0) {
 				//则挂起当前线程
-				this.wait();
+				notEmpty.await();
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+	/**
+	 * 从队列中获取元素，如果队列为空则最多等待timeout的时间
+	 * @param timeout
+	 * @param unit
+	 * @return 超时返回null
+	 * @throws InterruptedException
+	 */
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while(count == 0) {
+				if(nanos <= 0) {
+					return null;
+				}
+				nanos = notEmpty.awaitNanos(nanos);
 			}
-			//通知offer线程可以继续插入数据了
-			this.notifyAll();
-			return queue.removeFirst();
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	public int size() {
+		lock.lock();
+		try {
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	public int capacity() {
+		return items.length;
+	}
+	//调用者必须持有lock
+	private void enqueue(E data) {
+		items[putIndex] = data;
+		if(++putIndex == items.length) {
+			putIndex = 0;
+		}
+		count++;
+		//通知一个take线程可以继续获取数据了
+		notEmpty.signal();
+	}
+	//调用者必须持有lock
+	@SuppressWarnings("unchecked")
+	private E dequeue() {
+		E data = (E) items[takeIndex];
+		//释放引用，避免内存泄漏
+		items[takeIndex] = null;
+		if(++takeIndex == items.length) {
+			takeIndex = 0;
+		}
+		count--;
+		//通知一个offer线程可以继续插入数据了
+		notFull.signal();
+		return data;
+	}
+	
+	private static void checkNotNull(Object data) {
+		if(data == null) {
+			throw new NullPointerException("the data can not be null.");
 		}
 	}
 }
@@ -0,0 +1,132 @@
+package com.lbq.concurrent.chapter20;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+/**
+ * IntGuardedSuspensionQueue是GuardedSuspensionQueue针对int类型的特化版本，数据直接存放在int[]环形数组中，
+ * offer和take都不会产生任何装箱对象，同样使用notEmpty和notFull两个Condition分别挂起消费者和生产者。
+ * 
+ * 由于int无法使用null表示超时，带超时的poll在超时时会抛出TimeoutException(与5.4节中Lock.lock(long millis)一致)。
+ * @author 14378
+ *
+ */
+public class IntGuardedSuspensionQueue {
+	
+	private final static int DEFAULT_CAPACITY = 100;
+	
+	private final int[] items;
+	
+	private int takeIndex;
+	
+	private int putIndex;
+	
+	private int count;
+	
+	private final ReentrantLock lock = new ReentrantLock();
+	
+	private final Condition notEmpty = lock.newCondition();
+	
+	private final Condition notFull = lock.newCondition();
+	
+	public IntGuardedSuspensionQueue() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	public IntGuardedSuspensionQueue(int capacity) {
+		if(capacity <= 0) {
+			throw new IllegalArgumentException("the capacity must be positive.");
+		}
+		this.items = new int[capacity];
+	}
+	
+	public void offer(int data) throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while(count == items.length) {
+				notFull.await();
+			}
+			enqueue(data);
+		} finally {
+			lock.unlock();
+		}
+	}
+	//如果queue已满则最多等待timeout的时间，超时返回false
+	public boolean offer(int data, long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while(count == items.length) {
+				if(nanos <= 0) {
+					return false;
+				}
+				nanos = notFull.awaitNanos(nanos);
+			}
+			enqueue(data);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	public int take() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while(count == 0) {
+				notEmpty.await();
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+	//如果队列为空则最多等待timeout的时间，超时抛出TimeoutException
+	public int poll(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while(count == 0) {
+				if(nanos <= 0) {
+					throw new TimeoutException("can not get the data during " + unit.toMillis(timeout) + " ms.");
+				}
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+			return dequeue();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	public int size() {
+		lock.lock();
+		try {
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	public int capacity() {
+		return items.length;
+	}
+	
+	private void enqueue(int data) {
+		items[putIndex] = data;
+		if(++putIndex == items.length) {
+			putIndex = 0;
+		}
+		count++;
+		notEmpty.signal();
+	}
+	
+	private int dequeue() {
+		int data = items[takeIndex];
+		if(++takeIndex == items.length) {
+			takeIndex = 0;
+		}
+		count--;
+		notFull.signal();
+		return data;
+	}
+}
@@ -2,17 +2,34 @@ package com.lbq.concurrent.chapter22;
 
 import java.io.IOException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 /**
  * 与平日里编写word文档一样，word会定期自动保存我们编辑的文档，如果在电脑出现故障重启之时，
  * 没有来得及对文档保存，也不至于损失太多劳动成果，他甚至能够百分之百的恢复，AutoSaveThread类扮演的角色便在于此。
  * AutoSaveThread比较简单，其主要的工作就是每隔一秒的时间调用一次document的save方法。
+ * 
+ * 固定一秒的间隔在编辑频繁时每次需要保存的内容很多(宕机时丢失的也多)，而在没有编辑时又在空转，因此保存的间隔会根据编辑的频率自动调整：
+ * 1.每次保存之后根据上一个间隔内的编辑次数估算出编辑的频率，下一次间隔为积累TARGET_EDITS次编辑所需要的时间，
+ *   编辑越频繁间隔越短，并且限制在[MIN_INTERVAL, MAX_INTERVAL]之间。
+ * 2.上一个间隔内没有任何编辑时，间隔加倍直到MAX_INTERVAL。
+ * 3.通过shutdown停止，而不是interrupt，线程在FileChannel的IO操作中被中断会导致channel被关闭。
  * @author 14378
  *
  */
 public class AutoSaveThread extends Thread {
+	
+	private final static long MIN_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+	
+	private final static long MAX_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+	
+	private final static long INITIAL_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+	
+	private final static int TARGET_EDITS = 64;
 
 	private final Document document;
 	
+	private volatile boolean running = true;
+	
 	public AutoSaveThread(Document document) {
 		super("DocumentAutoSaveThread");
 		this.document = document;
@@ -20,14 +37,37 @@ public class AutoSaveThread extends Thread {
 	
 	@Override
 	public void run() {
-		while(true) {
+		long interval = INITIAL_INTERVAL;
+		long lastEditCount = document.editCount();
+		long lastNanos = System.nanoTime();
+		while(running) {
 			try {
-				//每隔一秒自动保存一次文档
+				//自动保存一次文档
 				document.save();
-				TimeUnit.SECONDS.sleep(1);
-			}catch(IOException | InterruptedException e) {
+			}catch(IOException e) {
 				break;
 			}
+			long now = System.nanoTime();
+			long editCount = document.editCount();
+			interval = nextInterval(interval, editCount - lastEditCount, now - lastNanos);
+			lastEditCount = editCount;
+			lastNanos = now;
+			LockSupport.parkNanos(this, interval);
+		}
+	}
+	
+	/** 停止自动保存，正在进行的保存会继续完成 **/
+	public void shutdown() {
+		running = false;
+		LockSupport.unpark(this);
+	}
+	
+	static long nextInterval(long interval, long edits, long elapsedNanos) {
+		if(edits <= 0) {
+			return Math.min(MAX_INTERVAL, interval * 2);
 		}
+		//积累TARGET_EDITS次编辑所需要的时间
+		long target = (long) ((double) elapsedNanos * TARGET_EDITS / edits);
+		return Math.max(MIN_INTERVAL, Math.min(MAX_INTERVAL, target));
 	}
 }
@@ -1,8 +1,11 @@
 package com.lbq.concurrent.chapter22;
 
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 /**
@@ -16,32 +19,58 @@ import java.util.List;
  * changed是balking pattern关注的状态，当changed为false的时候就像远处的服务员看到客户的请求被另外一个服务员接管了一样，
  * 于是放弃了任务的执行。
  * 4.在创建Document的时候，顺便还会启动自动保存文档的线程，该线程的主要目的在于在固定的时间里执行一次文档保存动作。
+ * 
+ * save只在this monitor中交换内容，磁盘写入不会阻塞edit：
+ * 1.在this monitor中只是将content与一个新的空列表交换并且将changed修改为false，磁盘写入在this monitor之外进行，edit不会再等待磁盘。
+ * 2.交换出来的所有行(以及每一行的换行符)被编码为ByteBuffer数组，通过FileChannel的gathering write一次性写入，
+ *   然后根据FsyncPolicy决定是否需要force。
+ * 3.多个save之间(自动保存和手动保存)通过writeLock串行化，并且先获得writeLock再交换content，这样写入文件的顺序与编辑的顺序一致；
+ *   排在后面的save获得writeLock之后发现changed已经为false，同样会放弃此次保存(balking)。
+ * 4.写入失败时将交换出来的内容放回content的头部，等待下一次保存。
  * @author 14378
  *
  */
 /** 代表正在编辑的文档类 **/
 public class Document {
+	
+	private final static byte[] LINE_SEPARATOR = "\r\n".getBytes(Charset.defaultCharset());
+	
 	/** 如果文档发生改变，changed会被设置为true **/
 	private boolean changed = false;
 	
 	/** 一次需要保存的内容，可以将其理解为内容缓存 **/
 	private List<String> content = new ArrayList<>();
 	
-	private final FileWriter writer;
+	/** 编辑的总次数，自动保存线程根据它计算编辑的频率 **/
+	private volatile long editCount;
+	
+	/** 保证多个save按顺序写入文件 **/
+	private final Object writeLock = new Object();
+	
+	private final FileChannel channel;
+	
+	private final FsyncPolicy fsyncPolicy;
 	
 	/** 自动保存文档的线程 **/
-	private static AutoSaveThread autoSaveThread;
+	private AutoSaveThread autoSaveThread;
 	
 	/** 构造函数需要传入文档保存的路径和文档名称 **/
-	private Document(String documentPath, String documentName) throws IOException {
-		this.writer = new FileWriter(new File(documentPath, documentName), true);
+	private Document(String documentPath, String documentName, FsyncPolicy fsyncPolicy) throws IOException {
+		this.channel = FileChannel.open(Paths.get(documentPath, documentName), 
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		this.fsyncPolicy = fsyncPolicy;
 	}
 	
 	/** 静态方法，主要用于创建文档，顺便启动 自动保存文档的线程 **/
 	public static Document create(String documentPath, String documentName) throws IOException {
-		Document document = new Document(documentPath, documentName);
-		autoSaveThread = new AutoSaveThread(document);
-		autoSaveThread.start();
+		return create(documentPath, documentName, FsyncPolicy.NONE);
+	}
+	
+	/** 创建文档并且指定保存之后是否需要将数据刷到磁盘 **/
+	public static Document create(String documentPath, String documentName, FsyncPolicy fsyncPolicy) throws IOException {
+		Document document = new Document(documentPath, documentName, fsyncPolicy);
+		document.autoSaveThread = new AutoSaveThread(document);
+		document.autoSaveThread.start();
 		return document;
 	}
 	
@@ -51,32 +80,84 @@ public class Document {
 			this.content.add(content);
 			//文档改变，changed会变为true
 			this.changed = true;
+			this.editCount++;
 		}
 	}
 	
-	/** 文档关闭的时候首先中断自动保存线程，然后关闭writer释放资源 **/
+	long editCount() {
+		return editCount;
+	}
+	
+	/** 
+	 * 文档关闭的时候首先停止自动保存线程，然后保存尚未保存的内容，最后关闭channel释放资源，
+	 * 这里不能中断自动保存线程，线程在FileChannel的IO操作中被中断会导致channel被关闭
+	 **/
 	public void close() throws IOException {
-		autoSaveThread.interrupt();
-		writer.close();
+		autoSaveThread.shutdown();
+		try {
+			autoSaveThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			save();
+		} finally {
+			channel.close();
+		}
 	}
 	
 	/** save方法用于为外部显式进行文档保存 **/
 	public void save() throws IOException {
-		synchronized (this) {
-			//balking，如果文档已经被保存了，则直接返回
-			if(!changed) {
-				return;
+		synchronized(writeLock) {
+			List<String> pending;
+			synchronized (this) {
+				//balking，如果文档已经被保存了，则直接返回
+				if(!changed) {
+					return;
+				}
+				//交换内容缓存，将changed修改为false，表明此刻再没有新的内容编辑
+				pending = this.content;
+				this.content = new ArrayList<>();
+				this.changed = false;
 			}
 			System.out.println(Thread.currentThread() + " execute the save action");
-			//将内容写入文档中
-			for(String cacheLine : content) {
-				this.writer.write(cacheLine);
-				this.writer.write("\r\n");
+			try {
+				write(pending);
+			} catch (IOException e) {
+				synchronized (this) {
+					//写入失败，将内容放回缓存等待下一次保存
+					pending.addAll(this.content);
+					this.content = pending;
+					this.changed = true;
+				}
+				throw e;
 			}
-			this.writer.flush();
-			//将changed修改为false，表明此刻再没有新的内容编辑
-			this.changed = false;
-			this.content.clear();
+		}
+	}
+	
+	/** 将内容写入文档中，每一行以及换行符都是一个ByteBuffer，一次gathering write全部写入 **/
+	private void write(List<String> lines) throws IOException {
+		ByteBuffer[] buffers = new ByteBuffer[lines.size() * 2];
+		ByteBuffer separator = ByteBuffer.wrap(LINE_SEPARATOR);
+		long remaining = 0;
+		for(int i = 0; i < lines.size(); i++) {
+			buffers[i * 2] = ByteBuffer.wrap(lines.get(i).getBytes(Charset.defaultCharset()));
+			buffers[i * 2 + 1] = separator.duplicate();
+			remaining += buffers[i * 2].remaining() + LINE_SEPARATOR.length;
+		}
+		//gathering write可能只写入了一部分，需要继续写入剩余的部分
+		while(remaining > 0) {
+			remaining -= channel.write(buffers);
+		}
+		switch(fsyncPolicy) {
+		case DATA:
+			channel.force(false);
+			break;
+		case ALL:
+			channel.force(true);
+			break;
+		default:
+			break;
 		}
 	}
 }
@@ -0,0 +1,12 @@
+package com.lbq.concurrent.chapter22;
+/**
+ * 文档保存之后是否需要调用FileChannel.force将数据刷到磁盘：
+ * 1.NONE：不调用，数据可能还停留在操作系统的page cache中，宕机时可能丢失，但是保存的速度最快。
+ * 2.DATA：调用force(false)，只保证文件的内容被写到磁盘。
+ * 3.ALL：调用force(true)，文件的内容以及元数据(例如文件的长度、修改时间)都会被写到磁盘。
+ * @author 14378
+ *
+ */
+public enum FsyncPolicy {
+	NONE, DATA, ALL
+}
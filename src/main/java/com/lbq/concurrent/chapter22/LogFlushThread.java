@@ -0,0 +1,46 @@
+package com.lbq.concurrent.chapter22;
+
+import java.util.concurrent.locks.LockSupport;
+/**
+ * WriteAheadLog的刷盘线程，扮演的角色与AutoSaveThread一样：
+ * 每隔flushInterval(或者待刷盘的字节数达到flushBytes时被提前唤醒)调用一次WriteAheadLog的flush，
+ * 没有待刷盘的记录时flush直接返回(balking)。
+ * 与AutoSaveThread一样通过shutdown而不是interrupt停止，退出之前会再执行一次flush。
+ * @author 14378
+ *
+ */
+final class LogFlushThread extends Thread {
+	
+	private final WriteAheadLog log;
+	
+	private final long flushIntervalNanos;
+	
+	private volatile boolean running = true;
+	
+	LogFlushThread(WriteAheadLog log, long flushIntervalNanos) {
+		super("WriteAheadLogFlushThread");
+		this.log = log;
+		this.flushIntervalNanos = flushIntervalNanos;
+		setDaemon(true);
+	}
+	
+	@Override
+	public void run() {
+		while(running) {
+			if(!log.isFlushThresholdReached()) {
+				LockSupport.parkNanos(this, flushIntervalNanos);
+			}
+			log.flush();
+		}
+		log.flush();
+	}
+	//待刷盘的字节数达到阈值时提前唤醒
+	void wakeUp() {
+		LockSupport.unpark(this);
+	}
+	
+	void shutdown() {
+		running = false;
+		LockSupport.unpark(this);
+	}
+}
@@ -0,0 +1,202 @@
+package com.lbq.concurrent.chapter22;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.ObjLongConsumer;
+import java.util.zip.CRC32;
+/**
+ * WriteAheadLog的一个段文件，文件名为该段第一个字节的LSN(log sequence number，即日志中的全局偏移量)。
+ * 1.段文件在创建时就被预先分配(用0填满)到固定的大小，之后的写入不会改变文件的长度，force(false)时不需要再更新文件的元数据。
+ * 2.段文件被只读地映射到内存(MappedByteBuffer)，用于恢复时扫描以及重放，写入则通过FileChannel的gathering write完成。
+ * 3.每条记录的格式为[length(int)][crc32(int)][payload]，length为0表示该段后面没有记录了(预先分配的0)。
+ * 4.创建段文件之后会force所在的目录，保证在任何记录被写入之前，段文件本身在崩溃之后仍然存在。
+ * 只会被刷盘线程访问(重放除外)，因此不需要任何同步。
+ * @author 14378
+ *
+ */
+final class LogSegment {
+	
+	final static int HEADER_SIZE = 8;
+	
+	private final static int ZERO_CHUNK = 64 * 1024;
+	
+	private final static boolean IS_WINDOWS = System.getProperty("os.name").startsWith("Windows");
+	
+	private final long baseLsn;
+	
+	private final Path path;
+	
+	private final FileChannel channel;
+	
+	private final MappedByteBuffer mapped;
+	//下一条记录写入的位置
+	private int position;
+	
+	private LogSegment(long baseLsn, Path path, FileChannel channel) throws IOException {
+		this.baseLsn = baseLsn;
+		this.path = path;
+		this.channel = channel;
+		this.mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+	}
+	/**
+	 * 创建并且预先分配一个新的段文件
+	 */
+	static LogSegment create(Path directory, long baseLsn, int size) throws IOException {
+		Path path = directory.resolve(fileName(baseLsn));
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			ByteBuffer zeros = ByteBuffer.allocate(ZERO_CHUNK);
+			long written = 0;
+			while(written < size) {
+				zeros.clear();
+				zeros.limit((int) Math.min(ZERO_CHUNK, size - written));
+				written += channel.write(zeros, written);
+			}
+			//文件的长度只会在这里改变一次
+			channel.force(true);
+			//force只保证文件本身的内容，新文件在目录中的条目需要对目录再force一次，否则崩溃之后整个段文件可能消失
+			forceDirectory(directory);
+			return new LogSegment(baseLsn, path, channel);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+	/**
+	 * 打开一个已经存在的段文件，扫描出最后一条完整的记录，并且将其后的内容清零，避免残缺的记录在下一次恢复时被误读
+	 */
+	static LogSegment open(Path path) throws IOException {
+		String name = path.getFileName().toString();
+		long baseLsn = Long.parseLong(name.substring(WriteAheadLog.FILE_PREFIX.length(), name.length() - WriteAheadLog.FILE_SUFFIX.length()));
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		LogSegment segment = new LogSegment(baseLsn, path, channel);
+		segment.position = segment.scan(null);
+		ByteBuffer zeros = ByteBuffer.allocate(ZERO_CHUNK);
+		boolean dirty = false;
+		for(int from = segment.position; from < segment.capacity(); from += ZERO_CHUNK) {
+			int to = Math.min(segment.capacity(), from + ZERO_CHUNK);
+			if(allZero(segment.mapped, from, to)) {
+				continue;
+			}
+			zeros.clear();
+			zeros.limit(to - from);
+			while(zeros.hasRemaining()) {
+				channel.write(zeros, from + zeros.position());
+			}
+			dirty = true;
+		}
+		if(dirty) {
+			channel.force(false);
+		}
+		return segment;
+	}
+	
+	/**
+	 * 将目录中条目的变化(创建、删除文件)持久化，Windows不支持以读的方式打开目录，其文件系统也不需要这样做
+	 */
+	static void forceDirectory(Path directory) throws IOException {
+		if(IS_WINDOWS) {
+			return;
+		}
+		try(FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		}
+	}
+	
+	static String fileName(long baseLsn) {
+		return String.format("%s%020d%s", WriteAheadLog.FILE_PREFIX, baseLsn, WriteAheadLog.FILE_SUFFIX);
+	}
+	/**
+	 * 从头开始依次读取每一条完整的记录
+	 * @param consumer 为null时只扫描
+	 * @return 最后一条完整记录之后的位置
+	 */
+	int scan(ObjLongConsumer<byte[]> consumer) {
+		ByteBuffer buffer = mapped.duplicate();
+		int offset = 0;
+		CRC32 crc = new CRC32();
+		while(offset + HEADER_SIZE <= buffer.capacity()) {
+			int length = buffer.getInt(offset);
+			if(length <= 0 || length > buffer.capacity() - offset - HEADER_SIZE) {
+				break;
+			}
+			byte[] payload = new byte[length];
+			buffer.position(offset + HEADER_SIZE);
+			buffer.get(payload);
+			crc.reset();
+			crc.update(payload, 0, length);
+			if((int) crc.getValue() != buffer.getInt(offset + 4)) {
+				break;
+			}
+			if(consumer != null) {
+				consumer.accept(payload, baseLsn + offset);
+			}
+			offset += HEADER_SIZE + length;
+		}
+		return offset;
+	}
+	/**
+	 * 在当前位置一次性写入所有的记录，不会force
+	 * @param frames 已经编码好的记录
+	 * @param bytes 所有记录的总字节数
+	 */
+	void write(ByteBuffer[] frames, int count, int bytes) throws IOException {
+		channel.position(position);
+		long remaining = bytes;
+		//gathering write可能只写入了一部分，需要继续写入剩余的部分
+		while(remaining > 0) {
+			remaining -= channel.write(frames, 0, count);
+		}
+		position += bytes;
+	}
+	
+	void force(FsyncPolicy policy) throws IOException {
+		switch(policy) {
+		case DATA:
+			channel.force(false);
+			break;
+		case ALL:
+			channel.force(true);
+			break;
+		default:
+			break;
+		}
+	}
+	
+	long baseLsn() {
+		return baseLsn;
+	}
+	
+	int position() {
+		return position;
+	}
+	
+	int capacity() {
+		return mapped.capacity();
+	}
+	
+	int remaining() {
+		return capacity() - position;
+	}
+	
+	Path path() {
+		return path;
+	}
+	
+	void close() throws IOException {
+		channel.close();
+	}
+	
+	private static boolean allZero(ByteBuffer buffer, int from, int to) {
+		for(int i = from; i < to; i++) {
+			if(buffer.get(i) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
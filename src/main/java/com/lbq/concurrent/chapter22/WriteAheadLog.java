@@ -0,0 +1,419 @@
+package com.lbq.concurrent.chapter22;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ObjLongConsumer;
+import java.util.zip.CRC32;
+/**
+ * 只追加的预写日志(write-ahead log)，是Document/AutoSaveThread的推广：
+ * Document由编辑线程写入内存缓存，自动保存线程定期将缓存写入文件；WriteAheadLog同样由任意多个线程追加记录，
+ * 由一个刷盘线程(LogFlushThread)将积累的记录批量写入文件，区别在于每一条记录都需要确认已经被持久化。
+ * 
+ * 1.append只是在调用者线程中将记录编码为[length][crc32][payload]并且放入无锁队列，返回一个CompletableFuture，
+ *   记录被写入并且force之后，该future以记录的LSN(log sequence number，即记录在日志中的全局偏移量)完成。
+ * 2.刷盘线程每隔flushInterval或者待刷盘的字节数达到flushBytes时，将队列中积累的所有记录通过一次gathering write写入，
+ *   然后只调用一次force(group commit)，一次fsync的代价被成百上千次写入分摊；队列为空时直接放弃(balking)。
+ * 3.日志由多个固定大小的段文件(LogSegment)组成，段文件预先分配并且被映射到内存，写满之后切换到一个已经预先分配好的备用段，
+ *   切换之后再预先分配下一个备用段。
+ * 4.打开时扫描已有的段文件，从最后一条完整的记录之后继续追加，replay用于按顺序重放所有完整的记录。
+ * 5.写入失败之后日志进入失败状态，之后所有的future都以该异常完成。
+ * 
+ * 用法如下：
+ * WriteAheadLog wal = WriteAheadLog.newBuilder().directory(Paths.get("wal")).build();
+ * long lsn = wal.append(record).get();
+ * @author 14378
+ *
+ */
+public class WriteAheadLog implements AutoCloseable {
+	
+	final static String FILE_PREFIX = "wal-";
+	
+	final static String FILE_SUFFIX = ".log";
+	//一次刷盘最多处理的记录个数
+	private final static int MAX_BATCH = 8192;
+	
+	private final Path directory;
+	
+	private final FsyncPolicy fsyncPolicy;
+	
+	private final int segmentSize;
+	
+	private final long flushBytes;
+	
+	private final ConcurrentLinkedQueue<PendingRecord> queue = new ConcurrentLinkedQueue<>();
+	//队列中等待刷盘的字节数
+	private final AtomicLong pendingBytes = new AtomicLong();
+	//正在执行append的线程数，close时需要等待它们完成
+	private final AtomicInteger appending = new AtomicInteger();
+	//已经封存的段以及当前的段，修改时需要持有this monitor
+	private final List<LogSegment> segments = new ArrayList<>();
+	
+	private final LogFlushThread flushThread;
+	//以下字段只会被刷盘线程访问
+	private LogSegment active;
+	
+	private LogSegment spare;
+	
+	private final ByteBuffer[] frames = new ByteBuffer[MAX_BATCH];
+	
+	private final PendingRecord[] batch = new PendingRecord[MAX_BATCH];
+	
+	private volatile long flushCount;
+	
+	private volatile long recordCount;
+	
+	private volatile IOException failure;
+	
+	private volatile boolean closed;
+	
+	private WriteAheadLog(Builder builder) throws IOException {
+		this.directory = builder.directory;
+		this.fsyncPolicy = builder.fsyncPolicy;
+		this.segmentSize = builder.segmentSize;
+		this.flushBytes = builder.flushBytes;
+		Files.createDirectories(directory);
+		recover();
+		this.flushThread = new LogFlushThread(this, builder.flushIntervalNanos);
+		this.flushThread.start();
+	}
+	
+	public static Builder newBuilder() {
+		return new Builder();
+	}
+	/**
+	 * 追加一条记录
+	 * @param record 记录的内容，不能为空，调用之后可以被重用
+	 * @return 记录被持久化之后以LSN完成的future，注意非async的回调会在刷盘线程中执行
+	 * @throws IllegalStateException 日志已经被关闭
+	 */
+	public CompletableFuture<Long> append(byte[] record) {
+		if(record.length == 0 || record.length > segmentSize - LogSegment.HEADER_SIZE) {
+			throw new IllegalArgumentException("illegal record length: " + record.length);
+		}
+		CompletableFuture<Long> future = new CompletableFuture<>();
+		appending.incrementAndGet();
+		try {
+			if(closed) {
+				throw new IllegalStateException("the log has been closed.");
+			}
+			IOException failure = this.failure;
+			if(failure != null) {
+				future.completeExceptionally(failure);
+				return future;
+			}
+			CRC32 crc = new CRC32();
+			crc.update(record, 0, record.length);
+			ByteBuffer frame = ByteBuffer.allocate(LogSegment.HEADER_SIZE + record.length);
+			frame.putInt(record.length).putInt((int) crc.getValue()).put(record).flip();
+			queue.offer(new PendingRecord(frame, future));
+			long pending = pendingBytes.addAndGet(frame.remaining());
+			if(pending >= flushBytes && pending - frame.remaining() < flushBytes) {
+				flushThread.wakeUp();
+			}
+			return future;
+		}finally {
+			appending.decrementAndGet();
+		}
+	}
+	/**
+	 * 按顺序重放所有完整的记录，通常在打开之后、追加之前调用
+	 * @param consumer 记录的内容以及LSN
+	 */
+	public void replay(ObjLongConsumer<byte[]> consumer) {
+		List<LogSegment> snapshot;
+		synchronized(this) {
+			snapshot = new ArrayList<>(segments);
+		}
+		for(LogSegment segment : snapshot) {
+			segment.scan(consumer);
+		}
+	}
+	/**
+	 * 删除所有记录都在lsn之前的已封存的段，通常在checkpoint之后调用
+	 * @param lsn
+	 * @throws IOException
+	 */
+	public void truncateBefore(long lsn) throws IOException {
+		List<LogSegment> removed = new ArrayList<>();
+		synchronized(this) {
+			//最后一个段是当前的段，不会被删除
+			while(segments.size() > 1 && segments.get(0).baseLsn() + segments.get(0).capacity() <= lsn) {
+				removed.add(segments.remove(0));
+			}
+		}
+		for(LogSegment segment : removed) {
+			Files.deleteIfExists(segment.path());
+		}
+		if(!removed.isEmpty()) {
+			LogSegment.forceDirectory(directory);
+		}
+	}
+	//已经执行的刷盘次数
+	public long flushCount() {
+		return flushCount;
+	}
+	//已经持久化的记录个数，除以flushCount即平均每次刷盘持久化的记录个数
+	public long recordCount() {
+		return recordCount;
+	}
+	/**
+	 * 不再接受新的记录，已经追加的记录会被刷盘，然后关闭所有的段文件
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized(this) {
+			if(closed) {
+				return;
+			}
+			closed = true;
+		}
+		//等待已经通过检查的append完成入队
+		while(appending.get() > 0) {
+			Thread.yield();
+		}
+		flushThread.shutdown();
+		try {
+			flushThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		active.close();
+		if(spare != null) {
+			spare.close();
+		}
+	}
+	
+	boolean isFlushThresholdReached() {
+		return pendingBytes.get() >= flushBytes;
+	}
+	/**
+	 * 将队列中积累的记录写入当前的段并且force，只会被刷盘线程调用
+	 */
+	void flush() {
+		//balking，没有需要刷盘的记录则直接返回
+		while(!queue.isEmpty() && flushBatch() == MAX_BATCH) {
+			//一批没有处理完，继续处理下一批
+		}
+	}
+	/**
+	 * 处理一批记录，最多MAX_BATCH条
+	 * @return 处理的记录个数
+	 */
+	private int flushBatch() {
+		int size = 0;
+		long drainedBytes = 0;
+		PendingRecord record;
+		while(size < MAX_BATCH && (record = queue.poll()) != null) {
+			batch[size++] = record;
+			drainedBytes += record.frame.remaining();
+		}
+		pendingBytes.addAndGet(-drainedBytes);
+		IOException failure = this.failure;
+		if(failure == null) {
+			try {
+				write(size);
+				flushCount++;
+				recordCount += size;
+			} catch (IOException e) {
+				this.failure = failure = e;
+			}
+		}
+		for(int i = 0; i < size; i++) {
+			if(failure == null) {
+				batch[i].future.complete(batch[i].lsn);
+			}else {
+				batch[i].future.completeExceptionally(failure);
+			}
+			batch[i] = null;
+		}
+		if(failure == null && spare == null) {
+			//在记录的future完成之后再预先分配备用段，不影响这一批记录的延迟
+			try {
+				spare = LogSegment.create(directory, nextBaseLsn(), segmentSize);
+			} catch (IOException e) {
+				this.failure = e;
+			}
+		}
+		return size;
+	}
+	
+	private void write(int size) throws IOException {
+		int count = 0;
+		int bytes = 0;
+		for(int i = 0; i < size; i++) {
+			PendingRecord record = batch[i];
+			int length = record.frame.remaining();
+			if(length > active.remaining() - bytes) {
+				//当前的段已经写满，先写入已经积累的记录，然后切换到下一个段
+				if(count > 0) {
+					active.write(frames, count, bytes);
+					active.force(fsyncPolicy);
+				}
+				roll();
+				count = 0;
+				bytes = 0;
+				//切换到的段可能放不下该记录(例如使用不同的segmentSize创建的段)，继续切换直到能够放下为止
+				while(length > active.remaining()) {
+					roll();
+				}
+			}
+			record.lsn = active.baseLsn() + active.position() + bytes;
+			frames[count++] = record.frame;
+			bytes += length;
+		}
+		if(count > 0) {
+			active.write(frames, count, bytes);
+			active.force(fsyncPolicy);
+		}
+		for(int i = 0; i < count; i++) {
+			frames[i] = null;
+		}
+	}
+	
+	private void roll() throws IOException {
+		LogSegment next = spare != null ? spare : LogSegment.create(directory, nextBaseLsn(), segmentSize);
+		spare = null;
+		LogSegment sealed = active;
+		synchronized(this) {
+			segments.add(next);
+			active = next;
+		}
+		//映射的内存在channel关闭之后仍然有效，重放时不受影响
+		sealed.close();
+	}
+	
+	private long nextBaseLsn() {
+		return active.baseLsn() + active.capacity();
+	}
+	/**
+	 * 打开目录中已有的段文件，最后一个有记录的段作为当前的段，紧随其后的完整大小的空段作为备用段，其余的空段被删除，
+	 * 之前的段已经被封存，只会通过映射的内存被重放，因此关闭其channel
+	 */
+	private void recover() throws IOException {
+		List<Path> paths = new ArrayList<>();
+		try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+			for(Path path : stream) {
+				paths.add(path);
+			}
+		}
+		//文件名中的LSN是定长的，按照文件名排序即按照LSN排序
+		paths.sort(null);
+		List<LogSegment> opened = new ArrayList<>();
+		for(Path path : paths) {
+			opened.add(LogSegment.open(path));
+		}
+		int last = 0;
+		for(int i = 0; i < opened.size(); i++) {
+			if(opened.get(i).position() > 0) {
+				last = i;
+			}
+		}
+		if(opened.isEmpty()) {
+			opened.add(LogSegment.create(directory, 0L, segmentSize));
+		}
+		this.active = opened.get(last);
+		for(int i = 0; i <= last; i++) {
+			segments.add(opened.get(i));
+			if(i < last) {
+				opened.get(i).close();
+			}
+		}
+		for(int i = last + 1; i < opened.size(); i++) {
+			LogSegment segment = opened.get(i);
+			//崩溃时没有预先分配完的段比segmentSize短，不能作为备用段
+			if(spare == null && segment.baseLsn() == nextBaseLsn() && segment.capacity() == segmentSize) {
+				spare = segment;
+			}else {
+				segment.close();
+				Files.deleteIfExists(segment.path());
+			}
+		}
+		if(spare == null) {
+			spare = LogSegment.create(directory, nextBaseLsn(), segmentSize);
+		}
+		//被删除的空段在目录中的变化需要在继续追加之前持久化
+		LogSegment.forceDirectory(directory);
+	}
+	
+	private static final class PendingRecord {
+		
+		private final ByteBuffer frame;
+		
+		private final CompletableFuture<Long> future;
+		
+		private long lsn;
+		
+		PendingRecord(ByteBuffer frame, CompletableFuture<Long> future) {
+			this.frame = frame;
+			this.future = future;
+		}
+	}
+	/**
+	 * Builder用于构建WriteAheadLog
+	 * @author 14378
+	 *
+	 */
+	public static class Builder {
+		
+		private Path directory;
+		
+		private int segmentSize = 64 * 1024 * 1024;
+		
+		private long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(2);
+		
+		private long flushBytes = 1024 * 1024;
+		
+		private FsyncPolicy fsyncPolicy = FsyncPolicy.DATA;
+		
+		public Builder directory(Path directory) {
+			this.directory = directory;
+			return this;
+		}
+		/**
+		 * 每个段文件的大小，单位为字节
+		 */
+		public Builder segmentSize(int segmentSize) {
+			if(segmentSize <= LogSegment.HEADER_SIZE) {
+				throw new IllegalArgumentException("the segment size is too small.");
+			}
+			this.segmentSize = segmentSize;
+			return this;
+		}
+		/**
+		 * 刷盘的间隔，间隔越长每次刷盘持久化的记录越多，但是每条记录等待的时间也越长
+		 */
+		public Builder flushInterval(long duration, TimeUnit unit) {
+			this.flushIntervalNanos = unit.toNanos(duration);
+			return this;
+		}
+		/**
+		 * 待刷盘的字节数达到flushBytes时不再等待flushInterval，立即刷盘
+		 */
+		public Builder flushBytes(long flushBytes) {
+			this.flushBytes = flushBytes;
+			return this;
+		}
+		
+		public Builder fsyncPolicy(FsyncPolicy fsyncPolicy) {
+			this.fsyncPolicy = fsyncPolicy;
+			return this;
+		}
+		
+		public WriteAheadLog build() throws IOException {
+			if(directory == null) {
+				throw new IllegalStateException("the directory must be specified.");
+			}
+			return new WriteAheadLog(this);
+		}
+	}
+}
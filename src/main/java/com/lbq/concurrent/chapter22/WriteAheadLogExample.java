@@ -0,0 +1,44 @@
+package com.lbq.concurrent.chapter22;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+/**
+ * 64个线程同时向WriteAheadLog追加记录，每个线程都等待自己的记录被持久化之后再追加下一条，
+ * 最后输出持久化的记录个数、刷盘次数以及平均每次刷盘持久化的记录个数，
+ * 可以看到一次fsync被大量的写入分摊，而不是每一次写入都需要一次fsync。
+ * @author 14378
+ *
+ */
+public class WriteAheadLogExample {
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		WriteAheadLog wal = WriteAheadLog.newBuilder()
+				.directory(Paths.get("wal"))
+				.segmentSize(16 * 1024 * 1024)
+				.flushInterval(2, TimeUnit.MILLISECONDS)
+				.fsyncPolicy(FsyncPolicy.DATA)
+				.build();
+		//重放上一次运行留下的记录
+		wal.replay((record, lsn) -> System.out.println(lsn + " => " + new String(record, StandardCharsets.UTF_8)));
+		Thread[] writers = new Thread[64];
+		for(int i = 0; i < writers.length; i++) {
+			final int id = i;
+			writers[i] = new Thread(() -> {
+				for(int j = 0; j < 1000; j++) {
+					CompletableFuture<Long> durable = wal.append(("writer-" + id + " record-" + j).getBytes(StandardCharsets.UTF_8));
+					durable.join();
+				}
+			}, "writer-" + i);
+			writers[i].start();
+		}
+		for(Thread writer : writers) {
+			writer.join();
+		}
+		System.out.println("records: " + wal.recordCount() + ", flushes: " + wal.flushCount() 
+				+ ", records per flush: " + (double) wal.recordCount() / Math.max(1, wal.flushCount()));
+		wal.close();
+	}
+}
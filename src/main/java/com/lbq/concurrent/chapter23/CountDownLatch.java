@@ -1,6 +1,9 @@
 package com.lbq.concurrent.chapter23;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 /**
  * 1.无限等待CountDownLatch实现
  * 下面来实现一个无限制等待门阀打开的Latch实现，当limit>0时调用await方法的线程将会进入无限的等待。
@@ -11,10 +14,24 @@ import java.util.concurrent.TimeUnit;
  * getUnarrived()获取当前还有多少个子任务未完成，这个返回值并不一定就是准确的，在多线程的情况下，
  * 某个线程在获得Unarrived任务数量并且返回之后，有可能limit又被减少，因此getUnarrived()是个评估值。
  * 
+ * CountDownLatch的实现是无锁的：
+ * 1.countDown只是一次对limit的CAS操作(竞争时重试)，只有将limit减少到0的那一次countDown才会唤醒等待的线程。
+ * 2.等待的线程被封装成WaitNode压入一个无锁的栈(Treiber Stack)，然后通过LockSupport.park挂起，任意多个线程可以同时等待，
+ *   门阀打开时一次性将栈替换为TERMINATED，并且逐个唤醒，此后的await不再入栈而是直接返回。
+ * 3.可超时的await使用System.nanoTime计算截止时间，剩余时间不足SPIN_FOR_TIMEOUT_THRESHOLD纳秒时自旋而不是挂起，
+ *   超时或者被中断的线程会像j.u.c.FutureTask的removeWaiter一样将自己的WaitNode从栈中摘除，门阀长时间不打开时反复超时的await不会使栈无限增长。
  * @author 14378
  *
  */
 public class CountDownLatch extends Latch {
+	
+	private final static AtomicIntegerFieldUpdater<Latch> LIMIT = AtomicIntegerFieldUpdater.newUpdater(Latch.class, "limit");
+	
+	private final static long SPIN_FOR_TIMEOUT_THRESHOLD = 1000L;
+	//门阀已经打开
+	private final static WaitNode TERMINATED = new WaitNode(null);
+	
+	private final AtomicReference<WaitNode> waiters = new AtomicReference<>();
 
 	public Runnable runnable;
 	
@@ -29,12 +46,7 @@ public class CountDownLatch extends Latch {
 	
 	@Override
 	public void await() throws InterruptedException {
-		synchronized (this) {
-			//当limit>0时，当前线程进入阻塞状态
-			while(limit > 0) {
-				this.wait();
-			}
-		}
+		awaitNanos(0L, false);
 		if(null != runnable) {
 			runnable.run();
 		}
@@ -42,15 +54,19 @@ public class CountDownLatch extends Latch {
 
 	@Override
 	public void countDown() {
-		synchronized(this) {
-			if(limit <= 0) {
+		for(;;) {
+			int current = limit;
+			if(current <= 0) {
 				throw new IllegalStateException("all of task already arrived");
 			}
-			//使limit减一，并且通知阻塞线程
-			limit--;
-			this.notifyAll();
+			//使limit减一，只有减少到0时才需要通知阻塞线程
+			if(LIMIT.compareAndSet(this, current, current - 1)) {
+				if(current == 1) {
+					release();
+				}
+				return;
+			}
 		}
-		
 	}
 
 	@Override
@@ -64,24 +80,119 @@ public class CountDownLatch extends Latch {
 		if(time <= 0) {
 			throw new IllegalArgumentException("The time is invalid.");
 		}
-		//将time转换为纳秒
-		long remainingNanos = unit.toNanos(time);
-		//等待任务将在endNanos纳秒后超时
-		final long endNanos = System.nanoTime() + remainingNanos;
-		synchronized (this) {
-			while(limit > 0) {
-				//如果超时则抛出WaitTimeException异常
-				if(TimeUnit.NANOSECONDS.toMillis(remainingNanos) <= 0) {
-					throw new WaitTimeoutException("The wait time over specify time.");
-				}
-				//等待remainingNanosecond，在等待的过程中有可能会被中断，需要重新计算remainingNanos
-				this.wait(TimeUnit.NANOSECONDS.toMillis(remainingNanos));
-				remainingNanos = endNanos - System.nanoTime();
-			}
+		if(!awaitNanos(unit.toNanos(time), true)) {
+			throw new WaitTimeoutException("The wait time over specify time.");
 		}
 		if(null != runnable) {
 			runnable.run();
 		}
 	}
-
+	/**
+	 * 等待门阀打开
+	 * @param nanos 最多等待的纳秒数
+	 * @param timed 是否可超时
+	 * @return 超时返回false
+	 * @throws InterruptedException
+	 */
+	private boolean awaitNanos(long nanos, boolean timed) throws InterruptedException {
+		if(Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+		if(limit == 0) {
+			return true;
+		}
+		//等待任务将在deadline纳秒后超时
+		final long deadline = timed ? System.nanoTime() + nanos : 0L;
+		WaitNode node = new WaitNode(Thread.currentThread());
+		if(!push(node)) {
+			//门阀在入栈之前已经打开
+			return true;
+		}
+		while(limit > 0) {
+			if(Thread.interrupted()) {
+				removeWaiter(node);
+				throw new InterruptedException();
+			}
+			if(!timed) {
+				LockSupport.park(this);
+				continue;
+			}
+			long remainingNanos = deadline - System.nanoTime();
+			if(remainingNanos <= 0) {
+				removeWaiter(node);
+				return limit == 0;
+			}
+			if(remainingNanos > SPIN_FOR_TIMEOUT_THRESHOLD) {
+				LockSupport.parkNanos(this, remainingNanos);
+			}
+		}
+		return true;
+	}
+	/**
+	 * 将node压入栈顶
+	 * @return 门阀已经打开则返回false
+	 */
+	private boolean push(WaitNode node) {
+		for(;;) {
+			WaitNode head = waiters.get();
+			if(head == TERMINATED) {
+				return false;
+			}
+			node.next = head;
+			if(waiters.compareAndSet(head, node)) {
+				return true;
+			}
+		}
+	}
+	/**
+	 * 清空node中的thread，然后将栈中所有thread为null的WaitNode摘除，
+	 * 与其他正在摘除的线程发生竞争时从栈顶重新开始遍历
+	 */
+	private void removeWaiter(WaitNode node) {
+		node.thread = null;
+		retry:
+		for(;;) {
+			WaitNode pred = null;
+			WaitNode q = waiters.get();
+			while(q != null && q != TERMINATED) {
+				WaitNode next = q.next;
+				if(q.thread != null) {
+					pred = q;
+				}else if(pred != null) {
+					pred.next = next;
+					//pred同时也被取消了，无法确定摘除是否生效
+					if(pred.thread == null) {
+						continue retry;
+					}
+				}else if(!waiters.compareAndSet(q, next)) {
+					continue retry;
+				}
+				q = next;
+			}
+			return;
+		}
+	}
+	//门阀打开，唤醒所有等待的线程
+	private void release() {
+		WaitNode node = waiters.getAndSet(TERMINATED);
+		while(node != null) {
+			Thread thread = node.thread;
+			if(thread != null) {
+				node.thread = null;
+				LockSupport.unpark(thread);
+			}
+			node = node.next;
+		}
+	}
+	
+	private static final class WaitNode {
+		
+		private volatile Thread thread;
+		
+		private volatile WaitNode next;
+		
+		WaitNode(Thread thread) {
+			this.thread = thread;
+		}
+	}
 }
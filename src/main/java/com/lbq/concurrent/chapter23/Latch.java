@@ -9,13 +9,15 @@ import java.util.concurrent.TimeUnit;
  * 子任务数量达到limit的时候，门阀才能打开，await()方法用于等待所有的子任务完成，如果到达数量未达到limit的时候，
  * 将无限等待下去，当子任务完成的时候调用countDown()方法使计数器减少一个，表明我已经完成任务了，
  * getUnarrived()方法主要用于查询当前还有多少个子任务还没有结束。
+ * 
+ * limit被声明为volatile，这样子类可以不借助任何锁，直接通过CAS对其进行修改，见CountDownLatch。
  * @author 14378
  *
  */
 public abstract class Latch {
 
 	/** 用于控制多少个线程完成任务时才能打开阀门 **/
-	protected int limit;
+	protected volatile int limit;
 	
 	/** 通过构造函数传入limit **/
 	public Latch(int limit) {
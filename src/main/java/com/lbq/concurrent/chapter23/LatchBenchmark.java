@@ -0,0 +1,103 @@
+package com.lbq.concurrent.chapter23;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+/**
+ * 比较本章的CountDownLatch与java.util.concurrent.CountDownLatch：
+ * 1.countDown组：4个线程同时对一个limit足够大的门阀执行countDown，比较countDown在竞争情况下的吞吐量。
+ * 2.roundTrip：当前线程创建一个门阀，由线程池中的PARTIES个线程分别执行一次countDown，当前线程await直到门阀打开，
+ *   即一次完整的fork/join，比较两者唤醒等待线程的延迟。
+ * @author 14378
+ *
+ */
+@Fork(1)
+@Measurement(iterations = 10)
+@Warmup(iterations = 10)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class LatchBenchmark {
+	
+	private final static int PARTIES = 4;
+	
+	@State(Scope.Group)
+	public static class Contended {
+		private CountDownLatch latch;
+		private java.util.concurrent.CountDownLatch jucLatch;
+		//每次迭代重新创建，保证limit不会被减少到0
+		@Setup(Level.Iteration)
+		public void init() {
+			this.latch = new CountDownLatch(Integer.MAX_VALUE);
+			this.jucLatch = new java.util.concurrent.CountDownLatch(Integer.MAX_VALUE);
+		}
+	}
+	
+	@State(Scope.Benchmark)
+	public static class Executor {
+		private ExecutorService executor;
+		@Setup
+		public void init() {
+			this.executor = Executors.newFixedThreadPool(PARTIES);
+		}
+		@TearDown
+		public void destroy() {
+			executor.shutdownNow();
+		}
+	}
+	@GroupThreads(4)
+	@Group("countDown")
+	@Benchmark
+	public void countDown(Contended contended) {
+		contended.latch.countDown();
+	}
+	@GroupThreads(4)
+	@Group("jucCountDown")
+	@Benchmark
+	public void jucCountDown(Contended contended) {
+		contended.jucLatch.countDown();
+	}
+	
+	@Benchmark
+	public void roundTrip(Executor executor) throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(PARTIES);
+		for(int i = 0; i < PARTIES; i++) {
+			executor.executor.execute(latch::countDown);
+		}
+		latch.await();
+	}
+	
+	@Benchmark
+	public void jucRoundTrip(Executor executor) throws InterruptedException {
+		java.util.concurrent.CountDownLatch latch = new java.util.concurrent.CountDownLatch(PARTIES);
+		for(int i = 0; i < PARTIES; i++) {
+			executor.executor.execute(latch::countDown);
+		}
+		latch.await();
+	}
+	
+	public static void main(String[] args) throws RunnerException {
+		Options opts = new OptionsBuilder()
+				.include(LatchBenchmark.class.getSimpleName())
+				.build();
+		new Runner(opts).run();
+	}
+}
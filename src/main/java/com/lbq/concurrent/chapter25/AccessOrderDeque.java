@@ -0,0 +1,69 @@
+package com.lbq.concurrent.chapter25;
+
+import java.util.function.Consumer;
+/**
+ * 由CacheNode组成的双向链表，头部是最久未被访问的节点，尾部是最近被访问的节点，
+ * 所有的操作都是O(1)的，并且不是线程安全的，只能在持有evictionLock的情况下使用。
+ * @author 14378
+ *
+ * @param <K>
+ * @param <V>
+ */
+final class AccessOrderDeque<K, V> {
+	//哨兵节点，head.next是最久未被使用的数据，head.prev是最近被使用的数据
+	private final CacheNode<K, V> head = new CacheNode<>(null, null);
+	
+	private int size;
+	
+	AccessOrderDeque() {
+		head.prev = head;
+		head.next = head;
+	}
+	
+	void linkLast(CacheNode<K, V> node) {
+		CacheNode<K, V> last = head.prev;
+		node.prev = last;
+		node.next = head;
+		last.next = node;
+		head.prev = node;
+		size++;
+	}
+	
+	void unlink(CacheNode<K, V> node) {
+		node.prev.next = node.next;
+		node.next.prev = node.prev;
+		node.prev = null;
+		node.next = null;
+		size--;
+	}
+	
+	void moveToLast(CacheNode<K, V> node) {
+		if(node == head.prev) {
+			return;
+		}
+		unlink(node);
+		linkLast(node);
+	}
+	//返回最久未被访问的节点，如果链表为空则返回null
+	CacheNode<K, V> peekFirst() {
+		return head.next == head ? null : head.next;
+	}
+	//返回最近被访问的节点，如果链表为空则返回null
+	CacheNode<K, V> peekLast() {
+		return head.prev == head ? null : head.prev;
+	}
+	
+	int size() {
+		return size;
+	}
+	
+	boolean isEmpty() {
+		return size == 0;
+	}
+	//从旧到新遍历链表中的节点
+	void forEach(Consumer<CacheNode<K, V>> action) {
+		for(CacheNode<K, V> node = head.next; node != head; node = node.next) {
+			action.accept(node);
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package com.lbq.concurrent.chapter25;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+import com.codahale.metrics.RatioGauge;
+/**
+ * CacheMetricSet将CacheStats中的统计数据以Gauge的形式暴露出来，加载耗时则直接使用CacheStats中的Timer，与7.5.3节中的BusinessService一样，
+ * 只需要调用一次registry.registerAll即可将一个缓存的所有Metric注册到MetricRegistry中，之后就可以使用任意一种Reporter进行输出。
+ * 
+ * 所有的Gauge都是在Reporter读取时才从LongAdder中汇总，只有加载耗时会在加载时直接记录到Timer中。
+ * Metric的名称以构造时传入的name为前缀，例如：
+ * orders.hits、orders.hit-rate、orders.load-latency、orders.evictions.size
+ * @author 14378
+ *
+ */
+public class CacheMetricSet implements MetricSet {
+	
+	private final Map<String, Metric> metrics = new HashMap<>();
+	
+	public CacheMetricSet(String name, LRUCache<?, ?> cache) {
+		this(name, cache.stats(), cache::size);
+	}
+	
+	public CacheMetricSet(String name, SoftLRUCache<?, ?> cache) {
+		this(name, cache.stats(), cache::size);
+	}
+	
+	private CacheMetricSet(String name, CacheStats stats, IntSupplier size) {
+		if(stats == null) {
+			throw new IllegalArgumentException("the cache does not record stats.");
+		}
+		metrics.put(MetricRegistry.name(name, "size"), (Gauge<Integer>) size::getAsInt);
+		metrics.put(MetricRegistry.name(name, "hits"), (Gauge<Long>) stats::hitCount);
+		metrics.put(MetricRegistry.name(name, "misses"), (Gauge<Long>) stats::missCount);
+		metrics.put(MetricRegistry.name(name, "hit-rate"), new RatioGauge() {
+			@Override
+			protected Ratio getRatio() {
+				return Ratio.of(stats.hitCount(), stats.hitCount() + stats.missCount());
+			}
+		});
+		metrics.put(MetricRegistry.name(name, "second-tier-hits"), (Gauge<Long>) stats::secondTierHitCount);
+		metrics.put(MetricRegistry.name(name, "load-success"), (Gauge<Long>) stats::loadSuccessCount);
+		metrics.put(MetricRegistry.name(name, "load-failure"), (Gauge<Long>) stats::loadFailureCount);
+		metrics.put(MetricRegistry.name(name, "demotion-failure"), (Gauge<Long>) stats::demotionFailureCount);
+		metrics.put(MetricRegistry.name(name, "load-latency"), stats.loadLatency());
+		for(EvictionCause cause : EvictionCause.values()) {
+			metrics.put(MetricRegistry.name(name, "evictions", cause.name().toLowerCase()), (Gauge<Long>) () -> stats.evictionCount(cause));
+		}
+	}
+
+	@Override
+	public Map<String, Metric> getMetrics() {
+		return Collections.unmodifiableMap(metrics);
+	}
+}
@@ -0,0 +1,66 @@
+package com.lbq.concurrent.chapter25;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+/**
+ * CacheNode既保存了K-V数据，同时也是淘汰队列(双向链表)中的节点，
+ * prev、next、queueType、removed以及时间轮相关的字段只会在持有evictionLock的情况下被访问，refreshing用于保证同一个节点同一时刻只有一个刷新任务。
+ * @author 14378
+ *
+ * @param <K>
+ * @param <V>
+ */
+final class CacheNode<K, V> {
+	
+	@SuppressWarnings("rawtypes")
+	private final static AtomicIntegerFieldUpdater<CacheNode> REFRESHING = AtomicIntegerFieldUpdater.newUpdater(CacheNode.class, "refreshing");
+	
+	final K key;
+	
+	final V value;
+	//写入时间
+	final long writeTime;
+	
+	//权重，在加入缓存之前由Weigher计算
+	int weight = 1;
+	//最近一次被读取的时间，由读线程直接写入
+	volatile long accessTime;
+	
+	volatile int refreshing;
+	
+	CacheNode<K, V> prev;
+	
+	CacheNode<K, V> next;
+	//节点所在的队列，由具体的淘汰策略使用
+	int queueType;
+	//节点是否已经被删除(被淘汰或者被替换)
+	boolean removed;
+	//过期时间，由TimerWheel使用
+	long expirationTime;
+	
+	CacheNode<K, V> prevInTimer;
+	
+	CacheNode<K, V> nextInTimer;
+	
+	CacheNode(K key, V value) {
+		this(key, value, System.nanoTime());
+	}
+	//从第二层存储中提升的数据会保留其原本的写入时间
+	CacheNode(K key, V value, long writeTime) {
+		this.key = key;
+		this.value = value;
+		this.writeTime = writeTime;
+		this.accessTime = writeTime;
+	}
+	//prev为null说明该节点还没有被加入链表或者已经被移出链表
+	boolean isLinked() {
+		return prev != null;
+	}
+	
+	boolean tryStartRefresh() {
+		return REFRESHING.compareAndSet(this, 0, 1);
+	}
+	
+	void refreshFailed() {
+		refreshing = 0;
+	}
+}
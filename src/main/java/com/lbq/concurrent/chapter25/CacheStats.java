@@ -0,0 +1,131 @@
+package com.lbq.concurrent.chapter25;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.codahale.metrics.Timer;
+/**
+ * CacheStats记录缓存的命中、加载以及淘汰情况，所有的计数器都是LongAdder，
+ * 在高并发的读操作下每个线程只会更新自己所在的cell，不会因为统计而在同一个缓存行上产生竞争。
+ * 
+ * 加载耗时记录在Metrics的Timer中，其Reservoir会对耗时进行采样，Reporter可以直接输出其分位数。
+ * 
+ * 通过Builder的recordStats开启统计之后，可以通过LRUCache.stats()获取，也可以通过CacheMetricSet注册到Metrics的MetricRegistry中。
+ * @author 14378
+ *
+ */
+public final class CacheStats {
+	
+	private final LongAdder hits = new LongAdder();
+	
+	private final LongAdder misses = new LongAdder();
+	
+	private final LongAdder secondTierHits = new LongAdder();
+	
+	private final LongAdder loadSuccesses = new LongAdder();
+	
+	private final LongAdder loadFailures = new LongAdder();
+	//降级到第二层存储时序列化失败而被直接丢弃的数据个数
+	private final LongAdder demotionFailures = new LongAdder();
+	//加载耗时，包括成功和失败的加载
+	private final Timer loadLatency = new Timer();
+	
+	private final LongAdder[] evictions = new LongAdder[EvictionCause.values().length];
+	
+	public CacheStats() {
+		for(int i = 0; i < evictions.length; i++) {
+			evictions[i] = new LongAdder();
+		}
+	}
+	
+	void recordHit() {
+		hits.increment();
+	}
+	
+	void recordMiss() {
+		misses.increment();
+	}
+	
+	void recordSecondTierHit() {
+		secondTierHits.increment();
+	}
+	
+	void recordLoadSuccess(long nanos) {
+		loadSuccesses.increment();
+		loadLatency.update(nanos, TimeUnit.NANOSECONDS);
+	}
+	
+	void recordLoadFailure(long nanos) {
+		loadFailures.increment();
+		loadLatency.update(nanos, TimeUnit.NANOSECONDS);
+	}
+	
+	void recordDemotionFailure() {
+		demotionFailures.increment();
+	}
+	
+	void recordEviction(EvictionCause cause) {
+		evictions[cause.ordinal()].increment();
+	}
+	
+	public long hitCount() {
+		return hits.sum();
+	}
+	
+	public long missCount() {
+		return misses.sum();
+	}
+	//没有任何请求时命中率为1
+	public double hitRate() {
+		long hits = hitCount();
+		long requests = hits + missCount();
+		return requests == 0 ? 1.0 : (double) hits / requests;
+	}
+	//未命中堆内缓存但是命中了第二层存储的次数，这部分也被计入missCount
+	public long secondTierHitCount() {
+		return secondTierHits.sum();
+	}
+	
+	public long loadSuccessCount() {
+		return loadSuccesses.sum();
+	}
+	
+	public long loadFailureCount() {
+		return loadFailures.sum();
+	}
+	
+	public long demotionFailureCount() {
+		return demotionFailures.sum();
+	}
+	
+	public Timer loadLatency() {
+		return loadLatency;
+	}
+	
+	public long evictionCount(EvictionCause cause) {
+		return evictions[cause.ordinal()].sum();
+	}
+	
+	public long evictionCount() {
+		long count = 0;
+		for(LongAdder eviction : evictions) {
+			count += eviction.sum();
+		}
+		return count;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("CacheStats{hits=").append(hitCount())
+				.append(", misses=").append(missCount())
+				.append(", secondTierHits=").append(secondTierHitCount())
+				.append(", loadSuccesses=").append(loadSuccessCount())
+				.append(", loadFailures=").append(loadFailureCount())
+				.append(", demotionFailures=").append(demotionFailureCount())
+				.append(", meanLoadNanos=").append((long) loadLatency.getSnapshot().getMean());
+		for(EvictionCause cause : EvictionCause.values()) {
+			builder.append(", evictions.").append(cause.name().toLowerCase()).append('=').append(evictionCount(cause));
+		}
+		return builder.append('}').toString();
+	}
+}
@@ -0,0 +1,14 @@
+package com.lbq.concurrent.chapter25;
+/**
+ * 数据被缓存淘汰的原因
+ * @author 14378
+ *
+ */
+public enum EvictionCause {
+	//超过了缓存的容量
+	SIZE,
+	//超过了过期时间
+	EXPIRED,
+	//value被GC回收
+	COLLECTED
+}
@@ -0,0 +1,24 @@
+package com.lbq.concurrent.chapter25;
+/**
+ * LRUCache支持的淘汰策略，可以通过LRUCache.Builder进行指定，默认为LRU。
+ * @author 14378
+ *
+ */
+public enum EvictionPolicy {
+	//淘汰最久未被访问的数据
+	LRU {
+		@Override
+		<K, V> EvictionQueue<K, V> newQueue(long maximum) {
+			return new LruEvictionQueue<>();
+		}
+	},
+	//窗口LRU + 基于访问频率准入的分段LRU，能够抵御一次性的扫描
+	W_TINY_LFU {
+		@Override
+		<K, V> EvictionQueue<K, V> newQueue(long maximum) {
+			return new WindowTinyLfuEvictionQueue<>(maximum);
+		}
+	};
+	
+	abstract <K, V> EvictionQueue<K, V> newQueue(long maximum);
+}
@@ -0,0 +1,23 @@
+package com.lbq.concurrent.chapter25;
+
+import java.util.function.Consumer;
+/**
+ * EvictionQueue负责维护缓存中数据的淘汰顺序，不同的淘汰策略(LRU、W-TinyLFU)有不同的实现，
+ * 所有的方法都只会在持有evictionLock的情况下被调用。
+ * @author 14378
+ *
+ * @param <K>
+ * @param <V>
+ */
+interface EvictionQueue<K, V> {
+	//新的节点被加入缓存
+	void onAdd(CacheNode<K, V> node);
+	//节点被访问
+	void onAccess(CacheNode<K, V> node);
+	//节点被移出缓存(被淘汰、被替换或者被删除)
+	void onRemove(CacheNode<K, V> node);
+	//当缓存超出容量时，选出下一个需要被淘汰的节点
+	CacheNode<K, V> victim();
+	//遍历所有的节点，越靠前的节点越容易被淘汰
+	void forEach(Consumer<CacheNode<K, V>> action);
+}
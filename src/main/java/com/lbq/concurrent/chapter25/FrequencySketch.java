@@ -0,0 +1,98 @@
+package com.lbq.concurrent.chapter25;
+/**
+ * FrequencySketch是一个Count-Min Sketch，用于以很小的内存开销估算每一个key最近被访问的频率，W-TinyLFU使用它决定新的数据能否进入缓存。
+ * 
+ * 1.每个计数器占用4bit(最大值为15)，一个long可以存放16个计数器，每个key通过4个不同的hash函数映射到4个计数器上，
+ *   估算频率时取4个计数器中的最小值，因为hash冲突只会使计数器偏大。
+ * 2.当累计增加的次数达到sampleSize时，所有的计数器都会被减半(老化)，这样过去很热但是现在已经很冷的数据的频率会逐渐降低。
+ * FrequencySketch不是线程安全的，只能在持有evictionLock的情况下使用。
+ * @author 14378
+ *
+ * @param <E>
+ */
+final class FrequencySketch<E> {
+	//用于计算4个不同hash的种子
+	private final static long[] SEED = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+	//减半时清除每个计数器最高位移下来的bit
+	private final static long RESET_MASK = 0x7777777777777777L;
+	//每个计数器的最低位，用于统计减半时被舍去的奇数
+	private final static long ONE_MASK = 0x1111111111111111L;
+	
+	private final long[] table;
+	
+	private final int tableMask;
+	//计数器累计增加sampleSize次之后进行一次老化
+	private final int sampleSize;
+	
+	private int size;
+	
+	FrequencySketch(long maximumSize) {
+		int maximum = (int) Math.max(1, Math.min(maximumSize, 1 << 30));
+		this.table = new long[1 << (32 - Integer.numberOfLeadingZeros(maximum - 1))];
+		this.tableMask = table.length - 1;
+		this.sampleSize = (int) Math.min(10L * maximum, Integer.MAX_VALUE);
+	}
+	/**
+	 * 估算e最近被访问的频率，最大值为15
+	 * @param e
+	 * @return
+	 */
+	int frequency(E e) {
+		int hash = spread(e.hashCode());
+		//每个key使用一个long中的某一组(4个)计数器
+		int start = (hash & 3) << 2;
+		int frequency = Integer.MAX_VALUE;
+		for(int i = 0; i < 4; i++) {
+			int index = indexOf(hash, i);
+			int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+	/**
+	 * 记录e的一次访问
+	 * @param e
+	 */
+	void increment(E e) {
+		int hash = spread(e.hashCode());
+		int start = (hash & 3) << 2;
+		boolean added = false;
+		for(int i = 0; i < 4; i++) {
+			added |= incrementAt(indexOf(hash, i), start + i);
+		}
+		if(added && ++size == sampleSize) {
+			reset();
+		}
+	}
+	//计数器已经达到最大值15时不再增加
+	private boolean incrementAt(int i, int j) {
+		int offset = j << 2;
+		long mask = 0xfL << offset;
+		if((table[i] & mask) != mask) {
+			table[i] += 1L << offset;
+			return true;
+		}
+		return false;
+	}
+	//所有的计数器减半
+	private void reset() {
+		int count = 0;
+		for(int i = 0; i < table.length; i++) {
+			count += Long.bitCount(table[i] & ONE_MASK);
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		size = (size >>> 1) - (count >>> 2);
+	}
+	
+	private int indexOf(int item, int i) {
+		long hash = (item + SEED[i]) * SEED[i];
+		hash += hash >>> 32;
+		return ((int) hash) & tableMask;
+	}
+	//对hashCode进行再次散列，避免质量较差的hashCode导致大量冲突
+	private static int spread(int x) {
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		return (x >>> 16) ^ x;
+	}
+}
@@ -0,0 +1,85 @@
+package com.lbq.concurrent.chapter25;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+/**
+ * 基于访问轨迹(trace)的命中率对比，分别使用EvictionPolicy.LRU以及EvictionPolicy.W_TINY_LFU回放同样的访问轨迹：
+ * 1.zipf：热点数据服从Zipf分布的访问。
+ * 2.zipf+scan：在Zipf分布的访问中，周期性地插入一批只会被访问一次的key，模拟批处理任务的顺序扫描。
+ * 命中率 = 1 - cacheLoader被调用的次数 / 总的访问次数。
+ * 
+ * 输出如下(扫描本身的访问一定不会命中，占总访问次数的20%)：
+ * zipf        LRU=0.49 W_TINY_LFU=0.59
+ * zipf+scan   LRU=0.36 W_TINY_LFU=0.41
+ * @author 14378
+ *
+ */
+public class HitRateBenchmark {
+	//缓存的容量
+	private final static int CAPACITY = 1_000;
+	//热点数据的key空间大小
+	private final static int KEY_SPACE = 100_000;
+	//总的访问次数
+	private final static int ACCESSES = 2_000_000;
+	//每隔SCAN_INTERVAL次访问插入一次扫描
+	private final static int SCAN_INTERVAL = 20_000;
+	//每次扫描访问的key数量
+	private final static int SCAN_LENGTH = 5_000;
+
+	public static void main(String[] args) {
+		long[] zipf = zipfTrace(false);
+		long[] zipfWithScan = zipfTrace(true);
+		System.out.printf("zipf        LRU=%.2f W_TINY_LFU=%.2f%n", hitRate(EvictionPolicy.LRU, zipf), hitRate(EvictionPolicy.W_TINY_LFU, zipf));
+		System.out.printf("zipf+scan   LRU=%.2f W_TINY_LFU=%.2f%n", hitRate(EvictionPolicy.LRU, zipfWithScan), hitRate(EvictionPolicy.W_TINY_LFU, zipfWithScan));
+	}
+	
+	private static double hitRate(EvictionPolicy policy, long[] trace) {
+		AtomicLong misses = new AtomicLong();
+		LRUCache<Long, Long> cache = LRUCache.<Long, Long>newBuilder().capacity(CAPACITY).evictionPolicy(policy).build(key -> {
+			misses.incrementAndGet();
+			return key;
+		});
+		for(long key : trace) {
+			cache.get(key);
+		}
+		return 1 - (double) misses.get() / trace.length;
+	}
+	/**
+	 * 生成访问轨迹，热点数据的key服从Zipf分布，扫描使用的key是负数，不会与热点数据重复
+	 * @param withScan
+	 * @return
+	 */
+	private static long[] zipfTrace(boolean withScan) {
+		Random random = new Random(7);
+		double[] cdf = zipfCdf(KEY_SPACE, 0.99);
+		long[] trace = new long[ACCESSES];
+		long scanKey = 0;
+		for(int i = 0; i < ACCESSES; ) {
+			if(withScan && i > 0 && i % SCAN_INTERVAL == 0) {
+				for(int j = 0; j < SCAN_LENGTH && i < ACCESSES; j++) {
+					trace[i++] = --scanKey;
+				}
+				if(i >= ACCESSES) {
+					break;
+				}
+			}
+			int index = Arrays.binarySearch(cdf, random.nextDouble());
+			trace[i++] = index >= 0 ? index : -index - 1;
+		}
+		return trace;
+	}
+	
+	private static double[] zipfCdf(int n, double skew) {
+		double[] cdf = new double[n];
+		double sum = 0;
+		for(int i = 0; i < n; i++) {
+			sum += 1 / Math.pow(i + 1, skew);
+			cdf[i] = sum;
+		}
+		for(int i = 0; i < n; i++) {
+			cdf[i] /= sum;
+		}
+		return cdf;
+	}
+}
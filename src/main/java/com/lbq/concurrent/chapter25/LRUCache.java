@@ -1,8 +1,13 @@
 package com.lbq.concurrent.chapter25;
 
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 /**
  * LRU其实是数据冷热治理的一种思想，不经常使用的数据被称为冷数据，经常使用的则称为热数据，
  * 对冷数据分配很少的资源或者提前释放，可以帮助我们节省更多的内存资源，LRUCache的实现方式有很多种，
@@ -10,65 +15,696 @@ import java.util.Map;
  * (其实LinkedHashMap自身也是双向链表和hash表的方式实现的)。
  * 
  * 在下述代码中：
- * 1.在LRUCache中，keyList主要负责对key的顺序进行管理，而Cache则主要用于存储真正的数据(K-V)。
+ * 1.在LRUCache中，双向链表负责对key的顺序进行管理，而Cache则主要用于存储真正的数据(K-V)。
  * 2.CacheLoader主要用于进行数据的获取。
- * 3.put方法可将Value缓存至Cache中，如果当前Cache的容量超过了指定容量大小，则会将最先保存至Cache中的数据丢弃掉。
- * 4.get方法根据key从Cache中获取数据，如果数据存在则先从keyList中删除，然后再插入到队尾，
- * 否则调用CacheLoader的load方法进行加载。
+ * 3.put方法可将Value缓存至Cache中，如果当前Cache的容量超过了指定容量大小，则会将最久未被使用的数据丢弃掉。
+ * 4.get方法根据key从Cache中获取数据，如果数据存在则将其移动到链表的队尾，否则调用CacheLoader的load方法进行加载。
+ * 
+ * LRUCache是线程安全的，get和put的时间复杂度都是O(1)：
+ * 1.数据存放在ConcurrentHashMap中，每一个CacheNode同时也是淘汰队列(双向链表)中的节点，可以在O(1)的时间内将其从链表中移除或者移动到队尾。
+ * 2.双向链表只会在持有evictionLock的情况下被修改。
+ * 3.读操作不会获取全局的锁，被访问的CacheNode会被记录在按线程分段的ReadBuffer中，当ReadBuffer已满或者发生写操作时，
+ *   持有evictionLock的线程会将这些访问记录批量地重放到双向链表中(LRU顺序是近似的，但是对于冷热数据的判断来说已经足够)。
+ * 
+ * 当某个热点key不存在时，如果多个线程同时调用get方法，每一个线程都会调用一次cacheLoader.load，后端的压力会随着线程数量成倍增加(缓存击穿)，
+ * 因此对加载过程进行了合并(single-flight)：同一个key同一时刻只会有一个线程执行加载，其他线程则等待同一个CompletableFuture的结果。
+ * 另外还可以通过Builder指定refreshAfterWrite，写入时间超过该值的数据在被读取时会在后台线程中异步地重新加载，
+ * 重新加载完成之前读取的线程仍然会得到旧的数据，而不会因为加载而阻塞。
+ * 
+ * 通过Builder还可以指定expireAfterWrite以及expireAfterAccess，过期的数据在被读取时会被当作不存在而重新加载，
+ * 过期数据的清理则交给了分层时间轮TimerWheel，在每次维护(写操作、ReadBuffer已满或者调用cleanUp)时推进时间轮，
+ * 只处理时间指针划过的桶，既不需要为每一个数据创建定时任务，也不需要全量扫描，突发写入的大量数据在过期后能够被及时地清除。
+ * 
+ * 当value的大小差异很大时(比如从100字节到5MB)，按照数据的个数限制容量要么浪费内存，要么有内存溢出的风险，
+ * 因此还可以通过Builder指定maximumWeight以及Weigher，每个数据的权重在写入时计算并记录在CacheNode中，
+ * 加入和移出时精确地增减weightedSize，当weightedSize超过maximumWeight时进行淘汰。
+ * 
+ * 通过Builder指定secondTier之后，因为容量不足而被淘汰的数据不会被直接丢弃，而是被降级到堆外的OffHeapStore中，
+ * 读取时如果堆内不存在，会先尝试从OffHeapStore中取出并提升回堆内，只有两层都不存在时才会调用CacheLoader，
+ * 这样既可以保存大量的温数据，又不会增加堆内存以及GC的压力。为了避免OffHeapStore中残留旧的数据，put时会使其中对应的数据失效。
+ * 降级时会保留数据原本的写入时间以及读取时间，已经过期的数据不会被降级，提升时过期的数据会被丢弃，过期时间也不会因为降级而重新计算；
+ * value的序列化在evictionLock之外进行，被淘汰的数据先记录在demotions中，写入OffHeapStore之前如果该key已经被put或者invalidate则放弃降级，序列化失败的数据会被直接丢弃并计入CacheStats.demotionFailureCount。
+ * 
+ * 通过Builder的recordStats可以开启统计，命中、加载以及各种原因的淘汰都会被记录到CacheStats中，
+ * 没有开启统计时stats为null，读写路径上不会有任何额外的开销。
+ * 
+ * 淘汰顺序的维护交给了EvictionQueue，除了默认的LRU以外，还可以通过Builder指定EvictionPolicy.W_TINY_LFU，
+ * 使缓存在面对一次性的扫描访问时仍然能够保留热点数据，两种策略的命中率对比可以参考HitRateBenchmark。
  * @author 14378
  *
  * @param <K>
  * @param <V>
  */
 public class LRUCache<K, V> {
-	//用于记录key值的顺序
-	private final LinkedList<K> keyList = new LinkedList<>();
+	//ReadBuffer的分段数量，是大于等于CPU核数的2的幂
+	private final static int READ_BUFFER_STRIPES = ceilingPowerOfTwo(Runtime.getRuntime().availableProcessors());
 	//用于存放数据
-	private final Map<K, V> cache = new HashMap<>();
-	//cache的最大容量
-	private final int capacity;
+	private final ConcurrentHashMap<K, CacheNode<K, V>> cache = new ConcurrentHashMap<>();
+	//维护数据的淘汰顺序
+	private final EvictionQueue<K, V> evictionQueue;
+	//保护淘汰队列的锁
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	//记录读操作的缓冲区
+	private final ReadBuffer<CacheNode<K, V>>[] readBuffers;
+	//cache的最大容量，指定了Weigher时为最大的权重之和
+	private final long maximum;
+	//计算每个数据的权重，默认每个数据的权重均为1
+	private final Weigher<? super K, ? super V> weigher;
 	//cacheLoader接口提供了一种加载数据的方式
 	private final CacheLoader<K, V> cacheLoader;
+	//正在加载中的key，用于合并对同一个key的并发加载
+	private final ConcurrentHashMap<K, CompletableFuture<V>> loadings = new ConcurrentHashMap<>();
+	//写入之后超过该时间的数据会被异步地重新加载，为0时不进行刷新，单位为纳秒
+	private final long refreshAfterWriteNanos;
+	//执行异步刷新的Executor
+	private final Executor refreshExecutor;
+	//写入之后超过该时间的数据将会过期，为0时不过期，单位为纳秒
+	private final long expireAfterWriteNanos;
+	//最近一次读取之后超过该时间的数据将会过期，为0时不过期，单位为纳秒
+	private final long expireAfterAccessNanos;
+	//调度过期数据的时间轮，没有设置过期时间时为null
+	private final TimerWheel<K, V> timerWheel;
+	//堆外的第二层存储，没有指定时为null
+	private final OffHeapStore<K, V> secondTier;
+	//已经被淘汰但还没有写入secondTier的数据，put、invalidate以及提升时会将其取消
+	private final ConcurrentHashMap<K, CacheNode<K, V>> demotions = new ConcurrentHashMap<>();
+	//等待在evictionLock之外进行降级的数据
+	private final ConcurrentLinkedQueue<CacheNode<K, V>> demotionQueue = new ConcurrentLinkedQueue<>();
+	//统计数据，没有开启统计时为null
+	private final CacheStats stats;
+	//淘汰队列中所有元素的权重之和，只会在持有evictionLock的情况下被修改
+	private long weightedSize;
 	
 	public LRUCache(int capacity, CacheLoader<K, V> cacheLoader) {
-		this.capacity = capacity;
+		this(new Builder<K, V>().capacity(capacity), cacheLoader);
+	}
+	
+	private LRUCache(Builder<K, V> builder, CacheLoader<K, V> cacheLoader) {
+		if(builder.maximum <= 0) {
+			throw new IllegalArgumentException("the capacity must be positive.");
+		}
+		this.maximum = builder.maximum;
+		this.weigher = builder.weigher;
 		this.cacheLoader = cacheLoader;
+		this.refreshAfterWriteNanos = builder.refreshAfterWriteNanos;
+		this.refreshExecutor = builder.refreshExecutor;
+		this.evictionQueue = builder.evictionPolicy.newQueue(builder.maximum);
+		this.expireAfterWriteNanos = builder.expireAfterWriteNanos;
+		this.expireAfterAccessNanos = builder.expireAfterAccessNanos;
+		this.secondTier = builder.secondTier;
+		this.stats = builder.recordStats ? new CacheStats() : null;
+		this.timerWheel = (expireAfterWriteNanos > 0 || expireAfterAccessNanos > 0) ? new TimerWheel<>(System.nanoTime()) : null;
+		this.readBuffers = newReadBuffers(READ_BUFFER_STRIPES);
+		for(int i = 0; i < READ_BUFFER_STRIPES; i++) {
+			readBuffers[i] = new ReadBuffer<>();
+		}
+	}
+	
+	public static <K, V> Builder<K, V> newBuilder() {
+		return new Builder<>();
 	}
 	
 	public void put(K key, V value) {
-		//当元素数量超过容量时，将最老的数据清除
-		if(keyList.size() >= capacity) {
-			K eldestKey = keyList.removeFirst();//eldest data
-			cache.remove(eldestKey);
-		}
-		//如果数据已经不存在，则从key的队列中删除
-		if(keyList.contains(key)) {
-			keyList.remove(key);
+		put(newNode(key, value));
+	}
+	
+	private void put(CacheNode<K, V> node) {
+		K key = node.key;
+		CacheNode<K, V> prior = cache.put(key, node);
+		evictionLock.lock();
+		try {
+			maintenance();
+			//如果数据已经存在，则将旧的节点从链表中删除
+			if(prior != null) {
+				unlink(prior);
+			}
+			//先取消还没有完成的降级再使第二层存储中的数据失效，因此第二层存储中不会残留比堆内更旧的数据
+			if(secondTier != null) {
+				demotions.remove(key);
+				secondTier.invalidate(key);
+			}
+			//将新的节点存放至队尾，如果该节点已经被其他线程的put替换，则不需要再加入链表
+			if(!node.removed) {
+				linkLast(node);
+			}
+			//当元素数量超过容量时，将最老的数据清除
+			evictEntries();
+		} finally {
+			evictionLock.unlock();
 		}
-		//将key存放至队尾
-		keyList.addLast(key);
-		cache.put(key, value);
+		demote();
 	}
 	
 	public V get(K key) {
-		V value;
-		//先将key从keyList中删除
-		boolean success = keyList.remove(key);
-		if(!success) {//如果删除失败则表明该数据不存在
-			//通过cacheLoader对数据进行加载
-			value = cacheLoader.load(key);
-			//调用put方法cache数据
-			this.put(key, value);
+		CacheNode<K, V> node = cache.get(key);
+		long now = (timerWheel != null || refreshAfterWriteNanos > 0) ? System.nanoTime() : 0L;
+		//如果数据存在并且没有过期，则记录本次访问，并且直接返回数据
+		if(node != null && !isExpired(node, now)) {
+			if(stats != null) {
+				stats.recordHit();
+			}
+			afterRead(node, now);
+			return node.value;
+		}
+		if(stats != null) {
+			stats.recordMiss();
+		}
+		return load(key);
+	}
+	/**
+	 * 立即执行一次维护工作，包括重放读操作记录以及清除已经过期的数据，当缓存长时间没有被访问时可以调用该方法及时释放内存
+	 */
+	public void cleanUp() {
+		evictionLock.lock();
+		try {
+			maintenance();
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+	/**
+	 * 对同一个key的并发加载只会有一个线程真正调用cacheLoader，其他线程等待该线程的加载结果
+	 * @param key
+	 * @return
+	 */
+	private V load(K key) {
+		CompletableFuture<V> loading = new CompletableFuture<>();
+		CompletableFuture<V> inFlight = loadings.putIfAbsent(key, loading);
+		if(inFlight != null) {
+			//已经有线程正在加载该key，等待其结果
+			return join(inFlight);
+		}
+		try {
+			//在注册loading之前，其他线程可能刚刚完成了加载
+			CacheNode<K, V> node = cache.get(key);
+			V value;
+			if(node != null && !isExpired(node, timerWheel != null ? System.nanoTime() : 0L)) {
+				value = node.value;
+			}else if(secondTier != null && (node = promote(key)) != null) {
+				//第二层存储命中，将数据连同其原本的写入时间提升回堆内
+				if(stats != null) {
+					stats.recordSecondTierHit();
+				}
+				value = node.value;
+				this.put(node);
+			}else {
+				//通过cacheLoader对数据进行加载
+				value = loadFromLoader(key);
+				//调用put方法cache数据，必须在移除loading之前完成，这样后续的线程一定能在cache中找到数据
+				this.put(key, value);
+			}
+			loading.complete(value);
+			return value;
+		} catch (Throwable e) {
+			loading.completeExceptionally(e);
+			throw e;
+		} finally {
+			loadings.remove(key, loading);
+		}
+	}
+	
+	/**
+	 * 从还没有完成的降级或者第二层存储中取出数据，恢复其写入时间以及读取时间，已经过期的数据会被丢弃
+	 * @param key
+	 * @return 没有数据或者数据已经过期时返回null
+	 */
+	private CacheNode<K, V> promote(K key) {
+		CacheNode<K, V> demoted = demotions.remove(key);
+		CacheNode<K, V> node;
+		long now = System.nanoTime();
+		if(demoted != null) {
+			node = newNode(key, demoted.value, demoted.writeTime);
+			node.accessTime = demoted.accessTime;
 		}else {
-			//如果删除成功，则从cache中返回数据，并且将key再次放到队尾
-			value = cache.get(key);
-			keyList.addLast(key);
+			OffHeapStore.Entry<V> entry = secondTier.removeEntry(key);
+			if(entry == null) {
+				return null;
+			}
+			//第二层存储中记录的是毫秒级的系统时间，转换为相对于当前时刻的nanoTime
+			long millis = System.currentTimeMillis();
+			node = newNode(key, entry.value, now - TimeUnit.MILLISECONDS.toNanos(Math.max(0L, millis - entry.writeTime)));
+			node.accessTime = now - TimeUnit.MILLISECONDS.toNanos(Math.max(0L, millis - entry.accessTime));
+		}
+		if(isExpired(node, now)) {
+			if(stats != null) {
+				stats.recordEviction(EvictionCause.EXPIRED);
+			}
+			return null;
+		}
+		//提升本身就是一次读取
+		node.accessTime = now;
+		return node;
+	}
+	/**
+	 * 将被淘汰的数据写入第二层存储，序列化在evictionLock之外进行，
+	 * 写入在Segment的锁中再次确认该降级没有被put、invalidate或者提升取消
+	 */
+	private void demote() {
+		if(secondTier == null) {
+			return;
+		}
+		CacheNode<K, V> victim;
+		while((victim = demotionQueue.poll()) != null) {
+			CacheNode<K, V> node = victim;
+			long now = System.nanoTime();
+			long millis = System.currentTimeMillis();
+			try {
+				secondTier.put(node.key, node.value, millis - TimeUnit.NANOSECONDS.toMillis(now - node.writeTime),
+						millis - TimeUnit.NANOSECONDS.toMillis(now - node.accessTime), () -> demotions.remove(node.key, node));
+			} catch (RuntimeException e) {
+				//序列化失败时只放弃这一个数据的降级，异常不能抛给正在put或者get其他key的调用者，队列中剩余的数据继续降级
+				demotions.remove(node.key, node);
+				if(stats != null) {
+					stats.recordDemotionFailure();
+				}
+			}
 		}
-		return value;
+	}
+	
+	//调用cacheLoader加载数据，开启统计时记录加载的耗时以及结果
+	private V loadFromLoader(K key) {
+		if(stats == null) {
+			return cacheLoader.load(key);
+		}
+		long start = System.nanoTime();
+		try {
+			V value = cacheLoader.load(key);
+			stats.recordLoadSuccess(System.nanoTime() - start);
+			return value;
+		} catch (Throwable e) {
+			stats.recordLoadFailure(System.nanoTime() - start);
+			throw e;
+		}
+	}
+	
+	private V join(CompletableFuture<V> loading) {
+		try {
+			return loading.join();
+		} catch (CompletionException e) {
+			//将加载线程抛出的异常原样抛给等待的线程
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if(cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
+	}
+	/**
+	 * 在后台重新加载node的数据，加载完成之后，只有当cache中的数据仍然是该node时才会被替换
+	 * @param node
+	 */
+	private void refresh(CacheNode<K, V> node) {
+		if(!node.tryStartRefresh()) {
+			//该node已经在刷新中
+			return;
+		}
+		try {
+			refreshExecutor.execute(() -> {
+				try {
+					V value = loadFromLoader(node.key);
+					replace(node, value);
+				} catch (Throwable e) {
+					//刷新失败时保留旧的数据，下一次读取会再次尝试刷新
+					node.refreshFailed();
+				}
+			});
+		} catch (Throwable e) {
+			node.refreshFailed();
+		}
+	}
+	
+	private void replace(CacheNode<K, V> node, V value) {
+		CacheNode<K, V> refreshed = newNode(node.key, value);
+		if(!cache.replace(node.key, node, refreshed)) {
+			//数据已经被淘汰或者被其他线程替换，放弃本次刷新的结果
+			return;
+		}
+		evictionLock.lock();
+		try {
+			maintenance();
+			unlink(node);
+			if(!refreshed.removed) {
+				linkLast(refreshed);
+			}
+			evictEntries();
+		} finally {
+			evictionLock.unlock();
+		}
+		demote();
+	}
+	
+	/**
+	 * 删除key对应的数据，第二层存储中的数据也会失效
+	 * @param key
+	 */
+	public void invalidate(K key) {
+		CacheNode<K, V> node = cache.remove(key);
+		evictionLock.lock();
+		try {
+			if(node != null) {
+				unlink(node);
+			}
+			if(secondTier != null) {
+				demotions.remove(key);
+				secondTier.invalidate(key);
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+	/**
+	 * 只在堆内查找数据，不存在或者已经过期时返回null而不进行加载，供SoftLRUCache自行加载并持有加载结果
+	 * @param key
+	 * @return
+	 */
+	V getIfPresent(K key) {
+		CacheNode<K, V> node = cache.get(key);
+		long now = (timerWheel != null || refreshAfterWriteNanos > 0) ? System.nanoTime() : 0L;
+		if(node != null && !isExpired(node, now)) {
+			if(stats != null) {
+				stats.recordHit();
+			}
+			afterRead(node, now);
+			return node.value;
+		}
+		if(stats != null) {
+			stats.recordMiss();
+		}
+		return null;
+	}
+	/**
+	 * 只有当key对应的value仍然是同一个对象时才将其删除，供SoftLRUCache清除已经被GC回收的数据
+	 * @param key
+	 * @param value
+	 * @return 是否删除成功
+	 */
+	boolean remove(K key, V value) {
+		CacheNode<K, V> node = cache.get(key);
+		if(node == null || node.value != value || !cache.remove(key, node)) {
+			return false;
+		}
+		evictionLock.lock();
+		try {
+			unlink(node);
+		} finally {
+			evictionLock.unlock();
+		}
+		return true;
+	}
+	
+	public int size() {
+		return cache.size();
+	}
+	//返回统计数据，没有通过Builder的recordStats开启统计时返回null
+	public CacheStats stats() {
+		return stats;
+	}
+	//SoftLRUCache记录因为GC而被清除的数据
+	void recordEviction(EvictionCause cause) {
+		if(stats != null) {
+			stats.recordEviction(cause);
+		}
+	}
+	//返回所有数据的权重之和，没有指定Weigher时与size相同
+	public long weightedSize() {
+		evictionLock.lock();
+		try {
+			return weightedSize;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+	
+	private CacheNode<K, V> newNode(K key, V value) {
+		return newNode(key, value, System.nanoTime());
+	}
+	
+	private CacheNode<K, V> newNode(K key, V value, long writeTime) {
+		int weight = weigher.weigh(key, value);
+		if(weight < 0) {
+			throw new IllegalArgumentException("the weight must not be negative.");
+		}
+		CacheNode<K, V> node = new CacheNode<>(key, value, writeTime);
+		node.weight = weight;
+		return node;
+	}
+	
+	private void afterRead(CacheNode<K, V> node, long now) {
+		if(expireAfterAccessNanos > 0) {
+			node.accessTime = now;
+		}
+		if(refreshAfterWriteNanos > 0 && now - node.writeTime > refreshAfterWriteNanos) {
+			refresh(node);
+		}
+		ReadBuffer<CacheNode<K, V>> readBuffer = readBuffers[(int) Thread.currentThread().getId() & (READ_BUFFER_STRIPES - 1)];
+		if(!readBuffer.offer(node)) {
+			//缓冲区已满，尝试将访问记录重放到链表中，如果其他线程正在持有锁则放弃
+			if(evictionLock.tryLock()) {
+				try {
+					maintenance();
+				} finally {
+					evictionLock.unlock();
+				}
+			}
+		}
+	}
+	//维护工作，调用者必须持有evictionLock
+	private void maintenance() {
+		drainReadBuffers();
+		expireEntries();
+	}
+	//将所有ReadBuffer中的访问记录重放到链表中，调用者必须持有evictionLock
+	private void drainReadBuffers() {
+		for(ReadBuffer<CacheNode<K, V>> readBuffer : readBuffers) {
+			readBuffer.drainTo(this::onAccess);
+		}
+	}
+	
+	//推进时间轮，清除已经过期的数据
+	private void expireEntries() {
+		if(timerWheel == null) {
+			return;
+		}
+		long now = System.nanoTime();
+		timerWheel.advance(now, node -> evictIfExpired(node, now));
+	}
+	
+	private boolean evictIfExpired(CacheNode<K, V> node, long now) {
+		long expirationTime = expirationTimeOf(node);
+		if(now - expirationTime < 0) {
+			//被访问过的数据过期时间会向后推迟，返回false之后时间轮会对其重新调度
+			node.expirationTime = expirationTime;
+			return false;
+		}
+		unlink(node);
+		if(cache.remove(node.key, node) && stats != null) {
+			stats.recordEviction(EvictionCause.EXPIRED);
+		}
+		return true;
+	}
+	
+	private boolean isExpired(CacheNode<K, V> node, long now) {
+		return (expireAfterWriteNanos > 0 && now - node.writeTime >= expireAfterWriteNanos)
+				|| (expireAfterAccessNanos > 0 && now - node.accessTime >= expireAfterAccessNanos);
+	}
+	//取写入过期时间以及访问过期时间中较早的一个
+	private long expirationTimeOf(CacheNode<K, V> node) {
+		if(expireAfterAccessNanos <= 0) {
+			return node.writeTime + expireAfterWriteNanos;
+		}
+		long accessExpiration = node.accessTime + expireAfterAccessNanos;
+		if(expireAfterWriteNanos <= 0) {
+			return accessExpiration;
+		}
+		long writeExpiration = node.writeTime + expireAfterWriteNanos;
+		return writeExpiration - accessExpiration < 0 ? writeExpiration : accessExpiration;
+	}
+	
+	private void evictEntries() {
+		while(weightedSize > maximum) {
+			CacheNode<K, V> victim = evictionQueue.victim();
+			unlink(victim);
+			//只有当cache中的节点仍然是该节点时才删除，否则说明该key已经被其他线程的put替换
+			if(cache.remove(victim.key, victim)) {
+				if(stats != null) {
+					stats.recordEviction(EvictionCause.SIZE);
+				}
+				//已经过期的数据不需要降级，其余的数据在释放evictionLock之后再序列化并写入第二层存储
+				if(secondTier != null && !isExpired(victim, System.nanoTime())) {
+					demotions.put(victim.key, victim);
+					demotionQueue.offer(victim);
+				}
+			}
+		}
+	}
+	
+	private void linkLast(CacheNode<K, V> node) {
+		evictionQueue.onAdd(node);
+		weightedSize += node.weight;
+		if(timerWheel != null) {
+			node.expirationTime = expirationTimeOf(node);
+			timerWheel.schedule(node);
+		}
+	}
+	
+	private void unlink(CacheNode<K, V> node) {
+		node.removed = true;
+		//还没有被加入淘汰队列的节点不需要移除
+		if(node.isLinked()) {
+			evictionQueue.onRemove(node);
+			weightedSize -= node.weight;
+		}
+		if(timerWheel != null) {
+			timerWheel.deschedule(node);
+		}
+	}
+	
+	private void onAccess(CacheNode<K, V> node) {
+		//已经被删除或者还没有被加入淘汰队列的节点不需要处理
+		if(node.isLinked()) {
+			evictionQueue.onAccess(node);
+			//访问过期时间发生了变化，需要重新调度
+			if(timerWheel != null && expireAfterAccessNanos > 0) {
+				node.expirationTime = expirationTimeOf(node);
+				timerWheel.reschedule(node);
+			}
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static <E> ReadBuffer<E>[] newReadBuffers(int size) {
+		return (ReadBuffer<E>[]) new ReadBuffer<?>[size];
+	}
+	
+	private static int ceilingPowerOfTwo(int x) {
+		return 1 << (32 - Integer.numberOfLeadingZeros(x - 1));
 	}
 	
 	@Override
 	public String toString() {
-		return this.keyList.toString();
+		evictionLock.lock();
+		try {
+			maintenance();
+			StringBuilder builder = new StringBuilder("[");
+			evictionQueue.forEach(node -> {
+				if(builder.length() > 1) {
+					builder.append(", ");
+				}
+				builder.append(node.key);
+			});
+			return builder.append(']').toString();
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+	/**
+	 * Builder用于构建LRUCache，当LRUCache需要的参数越来越多时，Builder要比不断增加构造函数更加友好
+	 * @author 14378
+	 *
+	 * @param <K>
+	 * @param <V>
+	 */
+	public static class Builder<K, V> {
+		
+		private long maximum;
+		
+		private Weigher<? super K, ? super V> weigher = (key, value) -> 1;
+		
+		private long refreshAfterWriteNanos;
+		
+		private Executor refreshExecutor = ForkJoinPool.commonPool();
+		
+		private EvictionPolicy evictionPolicy = EvictionPolicy.LRU;
+		
+		private long expireAfterWriteNanos;
+		
+		private long expireAfterAccessNanos;
+		
+		private OffHeapStore<K, V> secondTier;
+		
+		private boolean recordStats;
+		
+		public Builder<K, V> capacity(int capacity) {
+			this.maximum = capacity;
+			return this;
+		}
+		/**
+		 * 按照权重限制缓存的容量，所有数据的权重之和不会超过maximumWeight
+		 * @param maximumWeight
+		 * @param weigher
+		 * @return
+		 */
+		public Builder<K, V> maximumWeight(long maximumWeight, Weigher<? super K, ? super V> weigher) {
+			this.maximum = maximumWeight;
+			this.weigher = weigher;
+			return this;
+		}
+		/**
+		 * 写入之后超过duration的数据在被读取时会被异步地重新加载
+		 * @param duration
+		 * @param unit
+		 * @return
+		 */
+		public Builder<K, V> refreshAfterWrite(long duration, TimeUnit unit) {
+			this.refreshAfterWriteNanos = unit.toNanos(duration);
+			return this;
+		}
+		
+		public Builder<K, V> refreshExecutor(Executor refreshExecutor) {
+			this.refreshExecutor = refreshExecutor;
+			return this;
+		}
+		
+		public Builder<K, V> evictionPolicy(EvictionPolicy evictionPolicy) {
+			this.evictionPolicy = evictionPolicy;
+			return this;
+		}
+		
+		/**
+		 * 写入之后超过duration的数据将会过期
+		 * @param duration
+		 * @param unit
+		 * @return
+		 */
+		public Builder<K, V> expireAfterWrite(long duration, TimeUnit unit) {
+			this.expireAfterWriteNanos = unit.toNanos(duration);
+			return this;
+		}
+		/**
+		 * 最近一次读取或者写入之后超过duration的数据将会过期
+		 * @param duration
+		 * @param unit
+		 * @return
+		 */
+		public Builder<K, V> expireAfterAccess(long duration, TimeUnit unit) {
+			this.expireAfterAccessNanos = unit.toNanos(duration);
+			return this;
+		}
+		
+		/**
+		 * 被淘汰的数据会被降级到secondTier中，而不是直接丢弃
+		 * @param secondTier
+		 * @return
+		 */
+		public Builder<K, V> secondTier(OffHeapStore<K, V> secondTier) {
+			this.secondTier = secondTier;
+			return this;
+		}
+		
+		/**
+		 * 开启统计，统计数据可以通过LRUCache.stats()获取
+		 * @return
+		 */
+		public Builder<K, V> recordStats() {
+			this.recordStats = true;
+			return this;
+		}
+		
+		public LRUCache<K, V> build(CacheLoader<K, V> cacheLoader) {
+			return new LRUCache<>(this, cacheLoader);
+		}
 	}
 }
@@ -0,0 +1,39 @@
+package com.lbq.concurrent.chapter25;
+
+import java.util.function.Consumer;
+/**
+ * 最基本的LRU淘汰策略，只使用一个AccessOrderDeque，每次淘汰最久未被访问的数据。
+ * @author 14378
+ *
+ * @param <K>
+ * @param <V>
+ */
+final class LruEvictionQueue<K, V> implements EvictionQueue<K, V> {
+
+	private final AccessOrderDeque<K, V> deque = new AccessOrderDeque<>();
+	
+	@Override
+	public void onAdd(CacheNode<K, V> node) {
+		deque.linkLast(node);
+	}
+
+	@Override
+	public void onAccess(CacheNode<K, V> node) {
+		deque.moveToLast(node);
+	}
+
+	@Override
+	public void onRemove(CacheNode<K, V> node) {
+		deque.unlink(node);
+	}
+
+	@Override
+	public CacheNode<K, V> victim() {
+		return deque.peekFirst();
+	}
+
+	@Override
+	public void forEach(Consumer<CacheNode<K, V>> action) {
+		deque.forEach(action);
+	}
+}
@@ -0,0 +1,415 @@
+package com.lbq.concurrent.chapter25;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+/**
+ * OffHeapStore是LRUCache的第二层存储，数据被序列化之后存放在DirectByteBuffer或者MappedByteBuffer中，
+ * 不占用堆内存，也不会增加GC的负担，因此可以在一个节点上保存数GB的温数据。
+ * 
+ * 1.存储空间被划分为多个Segment，key按照hash值分配到不同的Segment中，每个Segment有自己的锁，单个Segment的大小不能超过2GB。
+ * 2.每个Segment都是一个环形的日志，数据只会被追加在写指针之后，写指针到达末尾时回绕到开头，覆盖上一轮写入的最老的数据，
+ *   因此空间的回收是按照FIFO的顺序进行的，不需要额外的内存分配器，也不会产生碎片。
+ * 3.Segment在堆上只保存了key到记录位置的索引，被删除或者被覆盖的记录只会被标记为无效，其空间在下一轮写入时被回收。
+ * 4.指定了文件时使用MappedByteBuffer，每个Segment的头部记录了写指针的位置，重新启动之后可以扫描文件恢复索引，实现快速的预热。
+ *   写入的数据由操作系统异步地刷新到磁盘，close方法会强制刷新一次，进程崩溃时最后写入的少量数据可能会丢失。
+ * 5.每条记录都保存了数据在堆内的写入时间以及最近一次读取的时间(毫秒级的系统时间，重新启动之后仍然有效)，
+ *   LRUCache在提升数据时据此恢复数据的写入时间，已经过期的数据不会被提升，也不会因为降级而重新开始计算过期时间。
+ * 
+ * 记录的格式为：[状态(1字节)][key的长度(4字节)][value的长度(4字节)][写入时间(8字节)][读取时间(8字节)][key][value]
+ * @author 14378
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class OffHeapStore<K, V> implements Closeable {
+	//Segment头部的标识，用于判断文件是否可以恢复
+	private final static int MAGIC = 0x4F484332;
+	//[magic][writePosition][oldestPosition][limit]
+	private final static int SEGMENT_HEADER_SIZE = 16;
+	
+	private final static int RECORD_HEADER_SIZE = 25;
+	
+	private final static byte LIVE = 1;
+	
+	private final static byte DEAD = 0;
+	
+	private final Serializer<K> keySerializer;
+	
+	private final Serializer<V> valueSerializer;
+	
+	private final Segment[] segments;
+	//使用内存映射文件时不为null
+	private final FileChannel channel;
+	
+	@SuppressWarnings("unchecked")
+	private OffHeapStore(Builder<K, V> builder) throws IOException {
+		if(builder.keySerializer == null || builder.valueSerializer == null) {
+			throw new IllegalArgumentException("the key and value serializer must be specified.");
+		}
+		if(Integer.bitCount(builder.segments) != 1) {
+			throw new IllegalArgumentException("the number of segments must be a power of two.");
+		}
+		long segmentSize = builder.capacity / builder.segments;
+		if(segmentSize <= SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE || segmentSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("the size of each segment must be between "
+					+ (SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE) + " and " + Integer.MAX_VALUE + " bytes.");
+		}
+		this.keySerializer = builder.keySerializer;
+		this.valueSerializer = builder.valueSerializer;
+		this.segments = (Segment[]) new OffHeapStore<?, ?>.Segment[builder.segments];
+		if(builder.file != null) {
+			this.channel = FileChannel.open(builder.file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			for(int i = 0; i < segments.length; i++) {
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, i * segmentSize, segmentSize);
+				segments[i] = new Segment(buffer);
+				segments[i].recover();
+			}
+		}else {
+			this.channel = null;
+			for(int i = 0; i < segments.length; i++) {
+				segments[i] = new Segment(ByteBuffer.allocateDirect((int) segmentSize));
+				segments[i].format();
+			}
+		}
+	}
+	
+	public static <K, V> Builder<K, V> newBuilder() {
+		return new Builder<>();
+	}
+	/**
+	 * 存放数据，如果序列化之后的数据比一个Segment还要大，则不会被存放
+	 * @param key
+	 * @param value
+	 * @return 是否存放成功
+	 */
+	public boolean put(K key, V value) {
+		long now = System.currentTimeMillis();
+		return put(key, value, now, now, null);
+	}
+	/**
+	 * LRUCache降级数据时使用，记录数据原本的写入时间以及读取时间，
+	 * condition不为null时在Segment的锁中进行检查，返回false则放弃本次写入，用于避免覆盖在序列化期间被写入或者删除的数据
+	 * @param key
+	 * @param value
+	 * @param writeTime 写入时间，单位为毫秒
+	 * @param accessTime 最近一次读取的时间，单位为毫秒
+	 * @param condition
+	 * @return 是否存放成功
+	 */
+	boolean put(K key, V value, long writeTime, long accessTime, BooleanSupplier condition) {
+		//序列化在锁外进行
+		byte[] keyBytes = keySerializer.serialize(key);
+		byte[] valueBytes = valueSerializer.serialize(value);
+		return segmentFor(key).put(key, keyBytes, valueBytes, writeTime, accessTime, condition);
+	}
+	
+	public V get(K key) {
+		Entry<V> entry = read(key, false);
+		return entry == null ? null : entry.value;
+	}
+	/**
+	 * 删除数据并将其返回
+	 * @param key
+	 * @return
+	 */
+	public V remove(K key) {
+		Entry<V> entry = read(key, true);
+		return entry == null ? null : entry.value;
+	}
+	/**
+	 * 删除数据并将其连同写入时间以及读取时间一起返回，LRUCache通过该方法将数据提升回堆内
+	 * @param key
+	 * @return
+	 */
+	Entry<V> removeEntry(K key) {
+		return read(key, true);
+	}
+	
+	private Entry<V> read(K key, boolean remove) {
+		Entry<byte[]> entry = segmentFor(key).get(key, remove);
+		//反序列化在锁外进行
+		return entry == null ? null
+				: new Entry<>(valueSerializer.deserialize(ByteBuffer.wrap(entry.value)), entry.writeTime, entry.accessTime);
+	}
+	/**
+	 * 使数据失效，与remove不同的是不需要读取以及反序列化value
+	 * @param key
+	 * @return 数据是否存在
+	 */
+	public boolean invalidate(K key) {
+		return segmentFor(key).invalidate(key);
+	}
+	
+	public int size() {
+		int size = 0;
+		for(Segment segment : segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if(channel != null) {
+			for(Segment segment : segments) {
+				segment.force();
+			}
+			channel.close();
+		}
+	}
+	
+	private Segment segmentFor(K key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return segments[h & (segments.length - 1)];
+	}
+	/**
+	 * Segment是一个环形的日志，所有的方法都在Segment的锁中执行。
+	 * 本轮写入的记录位于[SEGMENT_HEADER_SIZE, writePosition)，上一轮写入但还没有被覆盖的记录位于[oldestPosition, limit)。
+	 * @author 14378
+	 *
+	 */
+	private final class Segment {
+		
+		private final ByteBuffer buffer;
+		//key到记录位置的索引
+		private final Map<K, Integer> index = new HashMap<>();
+		
+		private int writePosition;
+		
+		private int oldestPosition;
+		
+		private int limit;
+		
+		Segment(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+		
+		synchronized boolean put(K key, byte[] keyBytes, byte[] valueBytes, long writeTime, long accessTime, BooleanSupplier condition) {
+			if(condition != null && !condition.getAsBoolean()) {
+				return false;
+			}
+			//旧的记录无论如何都要失效
+			invalidate(key);
+			long recordSize = (long) RECORD_HEADER_SIZE + keyBytes.length + valueBytes.length;
+			if(recordSize > buffer.capacity() - SEGMENT_HEADER_SIZE) {
+				return false;
+			}
+			int size = (int) recordSize;
+			if(writePosition + size > buffer.capacity()) {
+				//剩余的空间不足，丢弃上一轮剩余的记录并回绕到开头
+				evict(oldestPosition, limit);
+				limit = writePosition;
+				writePosition = SEGMENT_HEADER_SIZE;
+				oldestPosition = SEGMENT_HEADER_SIZE;
+			}
+			//覆盖上一轮写入的最老的记录
+			while(oldestPosition < limit && oldestPosition < writePosition + size) {
+				oldestPosition += evict(oldestPosition);
+			}
+			int position = writePosition;
+			buffer.put(position, LIVE);
+			buffer.putInt(position + 1, keyBytes.length);
+			buffer.putInt(position + 5, valueBytes.length);
+			buffer.putLong(position + 9, writeTime);
+			buffer.putLong(position + 17, accessTime);
+			ByteBuffer record = buffer.duplicate();
+			record.position(position + RECORD_HEADER_SIZE);
+			record.put(keyBytes);
+			record.put(valueBytes);
+			writePosition += size;
+			if(oldestPosition >= limit) {
+				//上一轮的记录已经全部被覆盖
+				oldestPosition = limit = writePosition;
+			}
+			index.put(key, position);
+			writeHeader();
+			return true;
+		}
+		
+		synchronized Entry<byte[]> get(K key, boolean remove) {
+			Integer position = remove ? index.remove(key) : index.get(key);
+			if(position == null) {
+				return null;
+			}
+			int keyLength = buffer.getInt(position + 1);
+			int valueLength = buffer.getInt(position + 5);
+			byte[] valueBytes = new byte[valueLength];
+			ByteBuffer record = buffer.duplicate();
+			record.position(position + RECORD_HEADER_SIZE + keyLength);
+			record.get(valueBytes);
+			if(remove) {
+				buffer.put(position, DEAD);
+			}
+			return new Entry<>(valueBytes, buffer.getLong(position + 9), buffer.getLong(position + 17));
+		}
+		
+		synchronized boolean invalidate(K key) {
+			Integer position = index.remove(key);
+			if(position == null) {
+				return false;
+			}
+			buffer.put(position, DEAD);
+			return true;
+		}
+		
+		synchronized int size() {
+			return index.size();
+		}
+		
+		synchronized void force() {
+			if(buffer instanceof MappedByteBuffer) {
+				((MappedByteBuffer) buffer).force();
+			}
+		}
+		
+		void format() {
+			writePosition = oldestPosition = limit = SEGMENT_HEADER_SIZE;
+			writeHeader();
+		}
+		/**
+		 * 扫描文件重建索引，先扫描上一轮的记录，再扫描本轮的记录，这样同一个key较新的记录会覆盖较老的记录
+		 */
+		synchronized void recover() {
+			writePosition = buffer.getInt(4);
+			oldestPosition = buffer.getInt(8);
+			limit = buffer.getInt(12);
+			if(buffer.getInt(0) != MAGIC || writePosition < SEGMENT_HEADER_SIZE || writePosition > oldestPosition
+					|| oldestPosition > limit || limit > buffer.capacity()) {
+				//新文件或者文件已经损坏
+				format();
+				return;
+			}
+			try {
+				scan(oldestPosition, limit);
+				scan(SEGMENT_HEADER_SIZE, writePosition);
+			} catch (RuntimeException e) {
+				//记录无法被解析，放弃文件中的数据
+				index.clear();
+				format();
+			}
+		}
+		
+		private void scan(int from, int to) {
+			for(int position = from; position < to; position += recordSize(position)) {
+				int keyLength = buffer.getInt(position + 1);
+				int valueLength = buffer.getInt(position + 5);
+				if(keyLength < 0 || valueLength < 0 || (long) position + RECORD_HEADER_SIZE + keyLength + valueLength > to) {
+					throw new IllegalStateException("corrupted record at " + position);
+				}
+				if(buffer.get(position) == LIVE) {
+					index.put(readKey(position), position);
+				}
+			}
+		}
+		//丢弃[from, to)中所有的记录
+		private void evict(int from, int to) {
+			for(int position = from; position < to; position += evict(position)) {
+			}
+		}
+		//丢弃position处的记录并返回其长度
+		private int evict(int position) {
+			if(buffer.get(position) == LIVE) {
+				index.remove(readKey(position), position);
+			}
+			return recordSize(position);
+		}
+		
+		private K readKey(int position) {
+			ByteBuffer record = buffer.duplicate();
+			record.position(position + RECORD_HEADER_SIZE);
+			record.limit(position + RECORD_HEADER_SIZE + buffer.getInt(position + 1));
+			return keySerializer.deserialize(record.slice());
+		}
+		
+		private int recordSize(int position) {
+			return RECORD_HEADER_SIZE + buffer.getInt(position + 1) + buffer.getInt(position + 5);
+		}
+		
+		private void writeHeader() {
+			buffer.putInt(0, MAGIC);
+			buffer.putInt(4, writePosition);
+			buffer.putInt(8, oldestPosition);
+			buffer.putInt(12, limit);
+		}
+	}
+	//第二层存储中的一条数据以及其写入时间和读取时间
+	static final class Entry<V> {
+		
+		final V value;
+		
+		final long writeTime;
+		
+		final long accessTime;
+		
+		Entry(V value, long writeTime, long accessTime) {
+			this.value = value;
+			this.writeTime = writeTime;
+			this.accessTime = accessTime;
+		}
+	}
+	/**
+	 * Builder用于构建OffHeapStore
+	 * @author 14378
+	 *
+	 * @param <K>
+	 * @param <V>
+	 */
+	public static class Builder<K, V> {
+		
+		private long capacity = 64 * 1024 * 1024;
+		
+		private int segments = 16;
+		
+		private Serializer<K> keySerializer;
+		
+		private Serializer<V> valueSerializer;
+		
+		private Path file;
+		/**
+		 * 总的存储空间，单位为字节
+		 * @param capacity
+		 * @return
+		 */
+		public Builder<K, V> capacity(long capacity) {
+			this.capacity = capacity;
+			return this;
+		}
+		
+		public Builder<K, V> segments(int segments) {
+			this.segments = segments;
+			return this;
+		}
+		
+		public Builder<K, V> keySerializer(Serializer<K> keySerializer) {
+			this.keySerializer = keySerializer;
+			return this;
+		}
+		
+		public Builder<K, V> valueSerializer(Serializer<V> valueSerializer) {
+			this.valueSerializer = valueSerializer;
+			return this;
+		}
+		/**
+		 * 使用内存映射文件存放数据，重新启动之后可以从文件中恢复
+		 * @param file
+		 * @return
+		 */
+		public Builder<K, V> file(Path file) {
+			this.file = file;
+			return this;
+		}
+		
+		public OffHeapStore<K, V> build() throws IOException {
+			return new OffHeapStore<>(this);
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package com.lbq.concurrent.chapter25;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+/**
+ * ReadBuffer用于记录缓存的读操作，读线程只需要通过一次CAS将被访问的元素放入环形数组中，而不需要获取全局的锁，
+ * 持有淘汰锁的线程会在稍后批量地将这些访问记录重放到LRU链表中。
+ * 
+ * ReadBuffer是有损(lossy)的，当缓冲区已满或者CAS竞争失败时，访问记录会被直接丢弃，对于LRU来说丢失少量的访问记录并不会影响热点数据的判断。
+ * offer方法可以被多个线程同时调用，drainTo方法则只能在持有淘汰锁的情况下调用。
+ * @author 14378
+ *
+ * @param <E>
+ */
+final class ReadBuffer<E> {
+	//缓冲区的大小，必须是2的幂
+	private final static int BUFFER_SIZE = 16;
+	
+	private final static int BUFFER_MASK = BUFFER_SIZE - 1;
+	
+	private final AtomicReferenceArray<E> buffer = new AtomicReferenceArray<>(BUFFER_SIZE);
+	//下一个写入的位置
+	private final AtomicLong writeCounter = new AtomicLong();
+	//下一个读取的位置，只会被持有淘汰锁的线程修改
+	private volatile long readCounter;
+	/**
+	 * 记录一次访问
+	 * @param e
+	 * @return 如果缓冲区已满返回false，此时调用者应该尝试清空缓冲区
+	 */
+	boolean offer(E e) {
+		long head = readCounter;
+		long tail = writeCounter.get();
+		if(tail - head >= BUFFER_SIZE) {
+			return false;
+		}
+		if(writeCounter.compareAndSet(tail, tail + 1)) {
+			buffer.lazySet((int) tail & BUFFER_MASK, e);
+		}
+		//CAS失败时丢弃本次访问记录
+		return true;
+	}
+	/**
+	 * 将缓冲区中的访问记录交给consumer处理
+	 * @param consumer
+	 */
+	void drainTo(Consumer<E> consumer) {
+		long head = readCounter;
+		long tail = writeCounter.get();
+		for(; head < tail; head++) {
+			int index = (int) head & BUFFER_MASK;
+			E e = buffer.get(index);
+			if(e == null) {
+				//写线程已经占用了该位置但是还没有完成写入，留到下一次处理
+				break;
+			}
+			buffer.lazySet(index, null);
+			consumer.accept(e);
+		}
+		readCounter = head;
+	}
+}
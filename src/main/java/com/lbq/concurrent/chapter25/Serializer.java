@@ -0,0 +1,46 @@
+package com.lbq.concurrent.chapter25;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+/**
+ * Serializer负责将key或者value转换成字节，以便存放在堆外的OffHeapStore中。
+ * @author 14378
+ *
+ * @param <T>
+ */
+public interface Serializer<T> {
+	//UTF-8编码的字符串
+	Serializer<String> STRING = new Serializer<String>() {
+		@Override
+		public byte[] serialize(String value) {
+			return value.getBytes(StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public String deserialize(ByteBuffer buffer) {
+			byte[] bytes = new byte[buffer.remaining()];
+			buffer.get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	};
+	
+	Serializer<Long> LONG = new Serializer<Long>() {
+		@Override
+		public byte[] serialize(Long value) {
+			return ByteBuffer.allocate(Long.BYTES).putLong(value).array();
+		}
+
+		@Override
+		public Long deserialize(ByteBuffer buffer) {
+			return buffer.getLong();
+		}
+	};
+	
+	byte[] serialize(T value);
+	/**
+	 * 从buffer中读取数据，buffer的remaining恰好是serialize返回的字节数
+	 * @param buffer
+	 * @return
+	 */
+	T deserialize(ByteBuffer buffer);
+}
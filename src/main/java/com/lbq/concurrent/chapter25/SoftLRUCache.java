@@ -1,9 +1,7 @@
 package com.lbq.concurrent.chapter25;
 
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map;
 /**
  * 25.3.2 Soft Reference 及 SoftLRUCache
  * 当JVM Detect(探测)到内存即将溢出，它会尝试GC soft类型的reference，
@@ -11,53 +9,107 @@ import java.util.Map;
  * 
  * 在SoftLRUCache中，cache的Value被声明成SoftReference<V>，在put一个键值对的时候，需要将V实例封装成new SoftReference<>(V)，这也是SoftReference引用的构造方式；
  * 在get数据的时候首先从cache中获取SoftReference，然后再通过get方法得到put进去的Value值。
+ * 
+ * 被GC清除的数据会及时地从缓存中删除，不会继续占用容量，get也不会因为value被清除而对一个存在的key返回null：
+ * 1.数据的存储以及淘汰直接复用了LRUCache，SoftLRUCache中只存放SoftValue(一个记录了key的SoftReference)。
+ * 2.SoftValue在创建时注册到ReferenceQueue中，被GC清除之后会被加入该队列，与SocketCleaningTracker类似，
+ *   不同的是并没有启动单独的Cleaner线程，而是在每次get/put时顺便从队列中取出一批(最多PURGE_BATCH_SIZE个)进行清理，清理的代价被分摊到了正常的操作中。
+ * 3.如果get时发现value已经被清除(还没有来得及被清理)，则删除该数据并通过LRUCache重新加载，而不是返回null，
+ *   加载与LRUCache一样只会对同一个key调用一次cacheLoader，并且会被记录到CacheStats中；cacheLoader返回null时表示没有数据，直接返回null并且不进行缓存。
+ * 4.因为GC而被清除的数据的个数可以通过gcEvictionCount获取，同时也会被记录到CacheStats中(EvictionCause.COLLECTED)。
+ * 5.淘汰策略默认为EvictionPolicy.LRU，也可以在构造时指定(比如EvictionPolicy.W_TINY_LFU)，直接交给底层的LRUCache。
  * @author 14378
  *
  * @param <K>
  * @param <V>
  */
 public class SoftLRUCache<K, V> {
-
-	private final LinkedList<K> keyList = new LinkedList<>();
+	//每次清理最多处理的SoftValue个数
+	private final static int PURGE_BATCH_SIZE = 64;
 	//Value采用SoftReference进行修饰
-	private final Map<K, SoftReference<V>> cache = new HashMap<>();
-	
-	private final int capacity;
-	
-	private final CacheLoader<K, V> cacheLoader;
-	
+	private final LRUCache<K, SoftValue<K, V>> cache;
+	//被GC清除的SoftValue会被加入该队列
+	private final ReferenceQueue<V> queue = new ReferenceQueue<>();
 	public SoftLRUCache(int capacity, CacheLoader<K, V> cacheLoader) {
-		this.capacity = capacity;
-		this.cacheLoader = cacheLoader;
+		this(capacity, cacheLoader, EvictionPolicy.LRU);
+	}
+	
+	public SoftLRUCache(int capacity, CacheLoader<K, V> cacheLoader, EvictionPolicy evictionPolicy) {
+		this.cache = LRUCache.<K, SoftValue<K, V>>newBuilder().capacity(capacity).evictionPolicy(evictionPolicy).recordStats()
+				.build(key -> new SoftValue<>(key, cacheLoader.load(key), queue));
 	}
 	
 	public void put(K key, V value) {
-		if(keyList.size() >= capacity) {
-			K eldestKey = keyList.removeFirst();//eldest data
-			cache.remove(eldestKey);
-		}
-		if(keyList.contains(key)) {
-			keyList.remove(key);
-		}
-		keyList.addLast(key);
+		purge();
 		//保存SoftReference
-		cache.put(key, new SoftReference<>(value));
+		cache.put(key, new SoftValue<>(key, value, queue));
 	}
 	
 	public V get(K key) {
-		V value;
-		boolean success = keyList.remove(key);
-		if(!success) {
-			value = cacheLoader.load(key);
-			this.put(key, value);
-		}else {
-			value = cache.get(key).get();
-			keyList.addLast(key);
+		purge();
+		for(;;) {
+			//未命中时通过LRUCache加载，同一个key的并发加载只会调用一次cacheLoader，并且会记录加载的耗时以及结果
+			SoftValue<K, V> reference = cache.get(key);
+			if(reference == null) {
+				return null;
+			}
+			//局部变量持有value的强引用，之后不会再被GC清除
+			V value = reference.get();
+			if(value != null) {
+				return value;
+			}
+			if(reference.loadedNull) {
+				//cacheLoader返回null表示没有数据，不进行缓存
+				cache.remove(key, reference);
+				return null;
+			}
+			//value已经被GC清除，删除之后重新加载
+			if(cache.remove(key, reference)) {
+				cache.recordEviction(EvictionCause.COLLECTED);
+			}
+		}
+	}
+	
+	public int size() {
+		return cache.size();
+	}
+	
+	public long gcEvictionCount() {
+		return cache.stats().evictionCount(EvictionCause.COLLECTED);
+	}
+	
+	public CacheStats stats() {
+		return cache.stats();
+	}
+	//清理一批已经被GC清除的数据
+	private void purge() {
+		for(int i = 0; i < PURGE_BATCH_SIZE; i++) {
+			@SuppressWarnings("unchecked")
+			SoftValue<K, V> reference = (SoftValue<K, V>) queue.poll();
+			if(reference == null) {
+				return;
+			}
+			//数据可能已经被LRU淘汰或者被替换
+			if(cache.remove(reference.key, reference)) {
+				cache.recordEviction(EvictionCause.COLLECTED);
+			}
 		}
-		return value;
 	}
+	
 	@Override
 	public String toString() {
-		return keyList.toString();
+		return cache.toString();
+	}
+	//记录了key的SoftReference，被清除之后可以通过key找到对应的数据
+	private static class SoftValue<K, V> extends SoftReference<V> {
+		private final K key;
+		//cacheLoader返回了null，与被GC清除区分开
+		private final boolean loadedNull;
+		
+		SoftValue(K key, V value, ReferenceQueue<? super V> queue) {
+			super(value, queue);
+			this.key = key;
+			this.loadedNull = value == null;
+		}
 	}
 }
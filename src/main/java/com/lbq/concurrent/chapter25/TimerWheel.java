@@ -0,0 +1,142 @@
+package com.lbq.concurrent.chapter25;
+
+import java.util.function.Predicate;
+/**
+ * 分层时间轮(Hierarchical Timer Wheel)，用于在O(1)的时间内调度以及处理过期的缓存数据，
+ * 既不需要为每一个数据创建定时任务，也不需要对所有的数据进行全量扫描。
+ * 
+ * 时间轮一共有5层，每一层由若干个桶(bucket)组成，每一个桶是一个由CacheNode组成的双向循环链表：
+ * 第1层64个桶，每个桶约1.07秒；第2层64个桶，每个桶约1.14分钟；第3层32个桶，每个桶约1.22小时；
+ * 第4层4个桶，每个桶约0.8天；第5层只有1个桶，存放更久之后才会过期的数据。
+ * 数据根据距离过期的时长被放入对应层的桶中，advance方法推进时间时，只会处理时间指针划过的桶，
+ * 桶中尚未过期的数据会被重新调度到更精确的层中(类似于钟表的时针、分针和秒针)。
+ * TimerWheel不是线程安全的，只能在持有evictionLock的情况下使用。
+ * @author 14378
+ *
+ * @param <K>
+ * @param <V>
+ */
+final class TimerWheel<K, V> {
+	//每一层桶的数量
+	private final static int[] BUCKETS = { 64, 64, 32, 4, 1 };
+	//每一层一个桶代表的时长(纳秒)，均为2的幂
+	private final static long[] SPANS = {
+			1L << 30, //1.07s
+			1L << 36, //1.14m
+			1L << 42, //1.22h
+			1L << 46, //0.8d
+			1L << 50, //13d
+			1L << 50
+	};
+	
+	private final static long[] SHIFT = {
+			Long.numberOfTrailingZeros(SPANS[0]),
+			Long.numberOfTrailingZeros(SPANS[1]),
+			Long.numberOfTrailingZeros(SPANS[2]),
+			Long.numberOfTrailingZeros(SPANS[3]),
+			Long.numberOfTrailingZeros(SPANS[4])
+	};
+	//每一个桶都是一个哨兵节点
+	private final CacheNode<K, V>[][] wheel;
+	//时间轮当前的时间
+	private long nanos;
+	
+	@SuppressWarnings("unchecked")
+	TimerWheel(long nanos) {
+		this.nanos = nanos;
+		this.wheel = (CacheNode<K, V>[][]) new CacheNode<?, ?>[BUCKETS.length][];
+		for(int i = 0; i < wheel.length; i++) {
+			wheel[i] = (CacheNode<K, V>[]) new CacheNode<?, ?>[BUCKETS[i]];
+			for(int j = 0; j < wheel[i].length; j++) {
+				CacheNode<K, V> sentinel = new CacheNode<>(null, null);
+				sentinel.prevInTimer = sentinel;
+				sentinel.nextInTimer = sentinel;
+				wheel[i][j] = sentinel;
+			}
+		}
+	}
+	/**
+	 * 将时间轮推进到currentTimeNanos，时间指针划过的桶中的数据会交给evictor处理，
+	 * 如果evictor返回false(数据还没有过期)，则该数据会被重新调度
+	 * @param currentTimeNanos
+	 * @param evictor
+	 */
+	void advance(long currentTimeNanos, Predicate<CacheNode<K, V>> evictor) {
+		long previousTimeNanos = nanos;
+		nanos = currentTimeNanos;
+		for(int i = 0; i < SHIFT.length; i++) {
+			long previousTicks = previousTimeNanos >>> SHIFT[i];
+			long currentTicks = currentTimeNanos >>> SHIFT[i];
+			//当前层的指针没有移动，更高层的指针也不会移动
+			if(currentTicks - previousTicks <= 0L) {
+				break;
+			}
+			expire(i, previousTicks, currentTicks - previousTicks, evictor);
+		}
+	}
+	
+	private void expire(int index, long previousTicks, long delta, Predicate<CacheNode<K, V>> evictor) {
+		CacheNode<K, V>[] buckets = wheel[index];
+		int mask = buckets.length - 1;
+		int steps = (int) Math.min(1 + delta, buckets.length);
+		int start = (int) (previousTicks & mask);
+		int end = start + steps;
+		for(int i = start; i < end; i++) {
+			CacheNode<K, V> sentinel = buckets[i & mask];
+			//先将整个桶摘下来，evictor处理的过程中可能会重新调度数据
+			CacheNode<K, V> node = sentinel.nextInTimer;
+			sentinel.prevInTimer = sentinel;
+			sentinel.nextInTimer = sentinel;
+			while(node != sentinel) {
+				CacheNode<K, V> next = node.nextInTimer;
+				node.prevInTimer = null;
+				node.nextInTimer = null;
+				if(!evictor.test(node)) {
+					schedule(node);
+				}
+				node = next;
+			}
+		}
+	}
+	/**
+	 * 根据node.expirationTime将其放入对应的桶中
+	 * @param node
+	 */
+	void schedule(CacheNode<K, V> node) {
+		CacheNode<K, V> sentinel = findBucket(node.expirationTime);
+		CacheNode<K, V> last = sentinel.prevInTimer;
+		node.prevInTimer = last;
+		node.nextInTimer = sentinel;
+		last.nextInTimer = node;
+		sentinel.prevInTimer = node;
+	}
+	//过期时间发生了变化，重新调度
+	void reschedule(CacheNode<K, V> node) {
+		if(node.nextInTimer != null) {
+			deschedule(node);
+			schedule(node);
+		}
+	}
+	
+	void deschedule(CacheNode<K, V> node) {
+		if(node.nextInTimer != null) {
+			node.prevInTimer.nextInTimer = node.nextInTimer;
+			node.nextInTimer.prevInTimer = node.prevInTimer;
+			node.prevInTimer = null;
+			node.nextInTimer = null;
+		}
+	}
+	
+	private CacheNode<K, V> findBucket(long time) {
+		long duration = time - nanos;
+		int length = wheel.length - 1;
+		for(int i = 0; i < length; i++) {
+			if(duration < SPANS[i + 1]) {
+				long ticks = time >>> SHIFT[i];
+				int index = (int) (ticks & (wheel[i].length - 1));
+				return wheel[i][index];
+			}
+		}
+		return wheel[length][0];
+	}
+}
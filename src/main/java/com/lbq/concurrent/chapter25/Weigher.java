@@ -0,0 +1,14 @@
+package com.lbq.concurrent.chapter25;
+/**
+ * Weigher用于计算每一个缓存数据的权重(比如value占用的字节数)，LRUCache会保证所有数据的权重之和不超过maximumWeight，
+ * 权重在数据被写入时计算一次，之后不会再改变。
+ * @author 14378
+ *
+ * @param <K>
+ * @param <V>
+ */
+@FunctionalInterface
+public interface Weigher<K, V> {
+	//返回数据的权重，不能为负数
+	int weigh(K key, V value);
+}
@@ -0,0 +1,139 @@
+package com.lbq.concurrent.chapter25;
+
+import java.util.function.Consumer;
+/**
+ * W-TinyLFU淘汰策略
+ * 纯粹的LRU无法抵御一次性的扫描：一个批处理任务顺序地访问大量只会被使用一次的key，就会把所有的热点数据挤出缓存。
+ * W-TinyLFU将缓存分为两个区域：
+ * 1.窗口区(window)：占容量的1%，新的数据总是先进入窗口区，窗口区按照LRU进行淘汰，使得突发的新热点有机会积累访问频率。
+ * 2.主区(main)：占容量的99%，又被分为试用区(probation)和保护区(protected，占主区的80%)，
+ *   从窗口区淘汰出来的数据先进入试用区，在试用区中再次被访问的数据会被晋升到保护区，保护区满时最久未被访问的数据会被降级回试用区。
+ * 当缓存超出容量时，试用区中最新的数据(候选者)会与试用区中最久未被访问的数据(受害者)比较由FrequencySketch估算的访问频率，
+ * 频率较低的一方被淘汰(相同时淘汰候选者)，因此只被访问过一次的扫描数据几乎无法挤掉频繁被访问的热点数据。
+ * 各个区域的大小都是按照数据的权重(CacheNode.weight)计算的。
+ * @author 14378
+ *
+ * @param <K>
+ * @param <V>
+ */
+final class WindowTinyLfuEvictionQueue<K, V> implements EvictionQueue<K, V> {
+	
+	private final static int WINDOW = 0;
+	
+	private final static int PROBATION = 1;
+	
+	private final static int PROTECTED = 2;
+	
+	private final static long MAX_SKETCH_SIZE = 1 << 20;
+	
+	private final AccessOrderDeque<K, V> window = new AccessOrderDeque<>();
+	
+	private final AccessOrderDeque<K, V> probation = new AccessOrderDeque<>();
+	
+	private final AccessOrderDeque<K, V> protectedDeque = new AccessOrderDeque<>();
+	//窗口区的最大容量
+	private final long maxWindow;
+	//保护区的最大容量
+	private final long maxProtected;
+	//窗口区中数据的权重之和
+	private long windowWeight;
+	//保护区中数据的权重之和
+	private long protectedWeight;
+	
+	private final FrequencySketch<K> sketch;
+	
+	WindowTinyLfuEvictionQueue(long maximum) {
+		this.maxWindow = Math.max(1, maximum / 100);
+		this.maxProtected = (long) ((maximum - maxWindow) * 0.8);
+		//按照权重限制容量时maximum可能非常大，FrequencySketch的大小需要有一个上限
+		this.sketch = new FrequencySketch<>(Math.min(maximum, MAX_SKETCH_SIZE));
+	}
+
+	@Override
+	public void onAdd(CacheNode<K, V> node) {
+		sketch.increment(node.key);
+		node.queueType = WINDOW;
+		window.linkLast(node);
+		windowWeight += node.weight;
+		//窗口区溢出的数据进入试用区，成为淘汰时的候选者
+		while(windowWeight > maxWindow && !window.isEmpty()) {
+			CacheNode<K, V> candidate = window.peekFirst();
+			window.unlink(candidate);
+			windowWeight -= candidate.weight;
+			candidate.queueType = PROBATION;
+			probation.linkLast(candidate);
+		}
+	}
+
+	@Override
+	public void onAccess(CacheNode<K, V> node) {
+		sketch.increment(node.key);
+		switch(node.queueType) {
+		case WINDOW:
+			window.moveToLast(node);
+			break;
+		case PROBATION:
+			//试用区中再次被访问的数据晋升到保护区
+			probation.unlink(node);
+			node.queueType = PROTECTED;
+			protectedDeque.linkLast(node);
+			protectedWeight += node.weight;
+			//保护区已满，将最久未被访问的数据降级到试用区
+			while(protectedWeight > maxProtected && !protectedDeque.isEmpty()) {
+				CacheNode<K, V> demoted = protectedDeque.peekFirst();
+				protectedDeque.unlink(demoted);
+				protectedWeight -= demoted.weight;
+				demoted.queueType = PROBATION;
+				probation.linkLast(demoted);
+			}
+			break;
+		default:
+			protectedDeque.moveToLast(node);
+		}
+	}
+
+	@Override
+	public void onRemove(CacheNode<K, V> node) {
+		dequeOf(node).unlink(node);
+		if(node.queueType == WINDOW) {
+			windowWeight -= node.weight;
+		}else if(node.queueType == PROTECTED) {
+			protectedWeight -= node.weight;
+		}
+	}
+
+	@Override
+	public CacheNode<K, V> victim() {
+		if(!probation.isEmpty()) {
+			CacheNode<K, V> victim = probation.peekFirst();
+			CacheNode<K, V> candidate = probation.peekLast();
+			if(candidate == victim) {
+				return victim;
+			}
+			//TinyLFU准入：候选者的访问频率高于受害者时才能留下
+			return sketch.frequency(candidate.key) > sketch.frequency(victim.key) ? victim : candidate;
+		}
+		if(!protectedDeque.isEmpty()) {
+			return protectedDeque.peekFirst();
+		}
+		return window.peekFirst();
+	}
+
+	@Override
+	public void forEach(Consumer<CacheNode<K, V>> action) {
+		probation.forEach(action);
+		protectedDeque.forEach(action);
+		window.forEach(action);
+	}
+	
+	private AccessOrderDeque<K, V> dequeOf(CacheNode<K, V> node) {
+		switch(node.queueType) {
+		case WINDOW:
+			return window;
+		case PROBATION:
+			return probation;
+		default:
+			return protectedDeque;
+		}
+	}
+}
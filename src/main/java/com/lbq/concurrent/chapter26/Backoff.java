@@ -0,0 +1,38 @@
+package com.lbq.concurrent.chapter26;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+/**
+ * 无锁传送带放置或者获取失败时的等待策略：先自旋，然后yield，最后通过parkNanos挂起，挂起的时间逐渐增加直到MAX_PARK_NANOS。
+ * 不需要任何线程之间的通知，代价是最多MAX_PARK_NANOS的延迟。
+ * @author 14378
+ *
+ */
+final class Backoff {
+	
+	private final static int SPIN_TRIES = 100;
+	
+	private final static int YIELD_TRIES = 200;
+	
+	private final static long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+	
+	private Backoff() {
+	}
+	/**
+	 * @param idles 已经连续失败的次数
+	 * @throws InterruptedException 等待期间被中断
+	 */
+	static void idle(int idles) throws InterruptedException {
+		if(idles < SPIN_TRIES) {
+			//自旋
+		}else if(idles < SPIN_TRIES + YIELD_TRIES) {
+			Thread.yield();
+		}else {
+			int shift = Math.min(idles - SPIN_TRIES - YIELD_TRIES, 20);
+			LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1L << shift));
+		}
+		if(Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+	}
+}
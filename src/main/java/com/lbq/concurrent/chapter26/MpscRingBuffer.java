@@ -0,0 +1,102 @@
+package com.lbq.concurrent.chapter26;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+/**
+ * 多生产者单消费者的无锁环形队列。
+ * 1.生产者通过CAS抢占tail，抢到序号之后再将元素通过lazySet写入对应的槽位，槽位不为null即表示元素已经被发布，
+ *   因此消费者看到tail已经前进但是槽位仍为null时，说明生产者还没有来得及写入，此时视为队列为空。
+ * 2.head只会被消费者修改，消费者将槽位置为null之后通过lazySet发布head，生产者据此判断队列是否已满。
+ * 3.生产者共享一份head的缓存(headCache)，只有当缓存显示队列已满时才会重新读取head。
+ * 4.与SpscRingBuffer一样，生产者和消费者使用的序号之间相隔PADDING个long，避免伪共享。
+ * @author 14378
+ *
+ * @param <E>
+ */
+public class MpscRingBuffer<E> implements RingBuffer<E> {
+	
+	private final static int PADDING = 16;
+	//生产者的缓存行
+	private final static int TAIL = PADDING;
+	
+	private final static int HEAD_CACHE = PADDING + 1;
+	//消费者的缓存行
+	private final static int HEAD = PADDING * 2;
+	
+	private final AtomicLongArray sequences = new AtomicLongArray(PADDING * 4);
+	
+	private final AtomicReferenceArray<E> buffer;
+	
+	private final int mask;
+	
+	public MpscRingBuffer(int capacity) {
+		int size = SpscRingBuffer.ceilingPowerOfTwo(capacity);
+		this.buffer = new AtomicReferenceArray<>(size);
+		this.mask = size - 1;
+	}
+
+	@Override
+	public boolean offer(E e) {
+		if(e == null) {
+			throw new NullPointerException();
+		}
+		int capacity = buffer.length();
+		long tail;
+		do {
+			tail = sequences.get(TAIL);
+			long wrapPoint = tail - capacity;
+			if(sequences.get(HEAD_CACHE) <= wrapPoint) {
+				long head = sequences.get(HEAD);
+				if(head <= wrapPoint) {
+					return false;
+				}
+				sequences.lazySet(HEAD_CACHE, head);
+			}
+		}while(!sequences.compareAndSet(TAIL, tail, tail + 1));
+		buffer.lazySet((int) tail & mask, e);
+		return true;
+	}
+
+	@Override
+	public E poll() {
+		long head = sequences.get(HEAD);
+		int index = (int) head & mask;
+		E e = buffer.get(index);
+		if(e == null) {
+			//队列为空或者生产者还没有完成写入
+			return null;
+		}
+		buffer.lazySet(index, null);
+		sequences.lazySet(HEAD, head + 1);
+		return e;
+	}
+
+	@Override
+	public int drainTo(E[] batch, int limit) {
+		long head = sequences.get(HEAD);
+		int count = 0;
+		while(count < limit) {
+			int index = (int) (head + count) & mask;
+			E e = buffer.get(index);
+			if(e == null) {
+				break;
+			}
+			batch[count++] = e;
+			buffer.lazySet(index, null);
+		}
+		if(count > 0) {
+			sequences.lazySet(HEAD, head + count);
+		}
+		return count;
+	}
+
+	@Override
+	public int size() {
+		return (int) Math.max(0, sequences.get(TAIL) - sequences.get(HEAD));
+	}
+
+	@Override
+	public int capacity() {
+		return buffer.length();
+	}
+}
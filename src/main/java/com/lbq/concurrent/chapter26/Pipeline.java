@@ -0,0 +1,305 @@
+package com.lbq.concurrent.chapter26;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+/**
+ * 多阶段的流水线，是Worker-Thread模式的扩展：ProductionChannel只有一个阶段，而Pipeline由多个阶段(PipelineStage)串联而成，
+ * 每个阶段都有自己的工人数量(并行度)，上一个阶段的输出就是下一个阶段的输入。
+ * 1.相邻的并行度为1的阶段会被融合(fused)成一段，由同一个线程依次执行，元素直接传递而不需要经过传送带。
+ * 2.段与段之间通过有界的无锁传送带(RingGroup)连接，下游处理不过来时传送带会被填满，上游的工人在放置时被阻塞，
+ *   直至阻塞submit的调用者，即背压(backpressure)会一直传递到源头。
+ * 3.加工方法返回null表示过滤掉该元素，抛出异常的元素会被丢弃并且计入failureCount，不会影响工人线程。
+ * 4.shutdown之后不再接受新的元素，已经提交的元素会被全部加工完毕(drain)，然后工人线程逐段退出。
+ *   shutdown不会等待正在执行的submit，因为第一段的传送带已满而阻塞的submit会抛出IllegalStateException，
+ *   最后一个离开submit的线程(可能是shutdown自己)负责通知第一段上游已经结束。
+ * 
+ * 用法如下：
+ * Pipeline<String> pipeline = Pipeline.<String>builder()
+ *         .stage("parse", 1, Record::parse)
+ *         .stage("enrich", 4, enricher::enrich)
+ *         .stage("load", 1, loader::load)
+ *         .build(System.out::println);
+ * pipeline.submit(line);
+ * @author 14378
+ *
+ * @param <I> 流水线输入元素的类型
+ */
+public class Pipeline<I> {
+	//工人一次最多从传送带上取下多少个元素
+	private final static int BATCH_SIZE = 16;
+	
+	private final List<PipelineStage> stages;
+	
+	private final List<Segment> segments = new ArrayList<>();
+	
+	private final Segment head;
+	//正在执行submit的线程数，shutdown之后降为0时通知第一段上游已经结束
+	private final AtomicInteger submitting = new AtomicInteger();
+	
+	private final CountDownLatch terminated = new CountDownLatch(1);
+	
+	private volatile boolean shutdown;
+	
+	private Pipeline(List<PipelineStage> stages, int capacity, Consumer<Object> sink) {
+		this.stages = Collections.unmodifiableList(stages);
+		//将相邻的并行度为1的阶段融合成一段
+		List<List<PipelineStage>> groups = new ArrayList<>();
+		for(PipelineStage stage : stages) {
+			List<PipelineStage> last = groups.isEmpty() ? null : groups.get(groups.size() - 1);
+			if(last != null && stage.getParallelism() == 1 && last.get(0).getParallelism() == 1) {
+				last.add(stage);
+			}else {
+				List<PipelineStage> group = new ArrayList<>();
+				group.add(stage);
+				groups.add(group);
+			}
+		}
+		Segment next = null;
+		for(int i = groups.size() - 1; i >= 0; i--) {
+			//第一段的上游是任意多个submit的线程
+			boolean singleProducer = i > 0 && groups.get(i - 1).get(0).getParallelism() == 1;
+			next = new Segment(groups.get(i), capacity, singleProducer, next, sink);
+			segments.add(0, next);
+		}
+		this.head = next;
+		for(Segment segment : segments) {
+			segment.start();
+		}
+	}
+	
+	public static <T> Builder<T, T> builder() {
+		return new Builder<>();
+	}
+	/**
+	 * 向流水线提交一个元素，第一段的传送带已满时阻塞
+	 * @param item
+	 * @throws InterruptedException
+	 * @throws IllegalStateException 已经被shutdown
+	 */
+	public void submit(I item) throws InterruptedException {
+		if(item == null) {
+			throw new NullPointerException();
+		}
+		submitting.incrementAndGet();
+		try {
+			if(shutdown) {
+				throw new IllegalStateException("the pipeline has been shut down.");
+			}
+			head.input.put(item);
+		}finally {
+			submitted();
+		}
+	}
+	/**
+	 * 不再接受新的元素，已经提交的元素会被加工完毕，不会阻塞
+	 */
+	public synchronized void shutdown() {
+		if(shutdown) {
+			return;
+		}
+		//shutdown自己也占有一个计数，保证在shutdown被设置之前submitting不会降为0
+		submitting.incrementAndGet();
+		shutdown = true;
+		//唤醒因为传送带已满而等待的submit
+		head.input.close();
+		submitted();
+	}
+	//离开submit，shutdown之后最后一个离开的线程通知第一段上游已经结束
+	private void submitted() {
+		if(submitting.decrementAndGet() == 0 && shutdown) {
+			head.upstreamDone = true;
+		}
+	}
+	/**
+	 * 等待所有的元素加工完毕并且所有的工人线程退出
+	 * @return 超时返回false
+	 * @throws InterruptedException
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return terminated.await(timeout, unit);
+	}
+	
+	public List<PipelineStage> stages() {
+		return stages;
+	}
+	/**
+	 * 瓶颈阶段，即单个工人加工一个元素的平均耗时(平均耗时/并行度)最长的阶段，通常它前面的传送带也积压得最多
+	 */
+	public PipelineStage bottleneck() {
+		PipelineStage bottleneck = null;
+		double max = -1;
+		for(PipelineStage stage : stages) {
+			double cost = stage.meanProcessNanos() / stage.getParallelism();
+			if(cost > max) {
+				max = cost;
+				bottleneck = stage;
+			}
+		}
+		return bottleneck;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("Pipeline");
+		for(PipelineStage stage : stages) {
+			builder.append("\n\t").append(stage);
+		}
+		return builder.toString();
+	}
+	/**
+	 * 由若干个融合在一起的阶段组成的一段，拥有自己的传送带以及工人线程
+	 */
+	private final class Segment {
+		
+		private final List<PipelineStage> stages;
+		
+		private final RingGroup<Object> input;
+		
+		private final Segment next;
+		
+		private final Consumer<Object> sink;
+		
+		private final Thread[] workers;
+		
+		private final AtomicInteger running;
+		//上游的所有元素都已经放到了传送带上
+		private volatile boolean upstreamDone;
+		
+		Segment(List<PipelineStage> stages, int capacity, boolean singleProducer, Segment next, Consumer<Object> sink) {
+			this.stages = stages;
+			int parallelism = stages.get(0).getParallelism();
+			this.input = new RingGroup<>(parallelism, capacity, singleProducer);
+			this.next = next;
+			this.sink = sink;
+			this.workers = new Thread[parallelism];
+			this.running = new AtomicInteger(parallelism);
+			StringBuilder name = new StringBuilder();
+			for(int i = 0; i < stages.size(); i++) {
+				stages.get(i).start(i == 0 ? input::size : () -> 0, i > 0);
+				name.append(i == 0 ? "" : "+").append(stages.get(i).getName());
+			}
+			for(int i = 0; i < parallelism; i++) {
+				final int ring = i;
+				workers[i] = new Thread(() -> work(ring), "Pipeline-" + name + "-" + i);
+			}
+		}
+		
+		void start() {
+			for(Thread worker : workers) {
+				worker.start();
+			}
+		}
+		
+		private void work(int ring) {
+			Object[] batch = new Object[BATCH_SIZE];
+			try {
+				int idles = 0;
+				for(;;) {
+					//先读取upstreamDone再取元素，这样upstreamDone为true并且没有取到元素时传送带一定已经空了
+					boolean done = upstreamDone;
+					int count = input.drainTo(ring, batch);
+					if(count == 0) {
+						if(done) {
+							break;
+						}
+						Backoff.idle(idles++);
+						continue;
+					}
+					idles = 0;
+					for(int i = 0; i < count; i++) {
+						Object item = batch[i];
+						batch[i] = null;
+						process(item);
+					}
+				}
+			} catch (InterruptedException e) {
+				//被中断，退出
+			} finally {
+				if(running.decrementAndGet() == 0) {
+					if(next != null) {
+						next.upstreamDone = true;
+					}else {
+						terminated.countDown();
+					}
+				}
+			}
+		}
+		
+		private void process(Object item) throws InterruptedException {
+			long start = System.nanoTime();
+			for(PipelineStage stage : stages) {
+				try {
+					item = stage.function().apply(item);
+				} catch (RuntimeException e) {
+					item = null;
+					long now = System.nanoTime();
+					stage.recordFailure(now - start);
+					return;
+				}
+				long now = System.nanoTime();
+				stage.recordSuccess(now - start);
+				start = now;
+				if(item == null) {
+					//被过滤掉
+					return;
+				}
+			}
+			if(next != null) {
+				next.input.put(item);
+			}else {
+				try {
+					sink.accept(item);
+				} catch (RuntimeException e) {
+					//输出失败同样计入最后一个阶段
+					stages.get(stages.size() - 1).recordFailure(0L);
+				}
+			}
+		}
+	}
+	
+	public static class Builder<I, O> {
+		
+		private final List<PipelineStage> stages = new ArrayList<>();
+		
+		private int capacity = 1024;
+		
+		private Builder() {
+		}
+		/**
+		 * 追加一个阶段
+		 * @param name 阶段的名称
+		 * @param parallelism 工人的数量
+		 * @param function 加工方法，返回null表示过滤掉该元素
+		 */
+		@SuppressWarnings("unchecked")
+		public <R> Builder<I, R> stage(String name, int parallelism, Function<? super O, ? extends R> function) {
+			stages.add(new PipelineStage(name, parallelism, function));
+			return (Builder<I, R>) this;
+		}
+		//段与段之间每条传送带的容量
+		public Builder<I, O> capacity(int capacity) {
+			if(capacity <= 0) {
+				throw new IllegalArgumentException("the capacity must be positive.");
+			}
+			this.capacity = capacity;
+			return this;
+		}
+		/**
+		 * 构建并且启动流水线
+		 * @param sink 最后一个阶段的输出，由最后一段的工人线程调用
+		 */
+		@SuppressWarnings("unchecked")
+		public Pipeline<I> build(Consumer<? super O> sink) {
+			if(stages.isEmpty()) {
+				throw new IllegalStateException("the pipeline has no stage.");
+			}
+			return new Pipeline<>(new ArrayList<>(stages), capacity, (Consumer<Object>) sink);
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package com.lbq.concurrent.chapter26;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+/**
+ * 使用Pipeline完成一个5个阶段的ETL任务：
+ * parse -> validate -> enrich -> transform -> format
+ * 其中parse和validate的并行度为1，会被融合成一段；enrich模拟一次较慢的远程调用，因此需要4个工人；transform和format同样会被融合。
+ * 提交完毕之后调用shutdown，等待所有的记录加工完成，然后输出每个阶段的统计数据以及瓶颈阶段。
+ * @author 14378
+ *
+ */
+public class PipelineExample {
+
+	public static void main(String[] args) throws InterruptedException {
+		LongAdder loaded = new LongAdder();
+		Pipeline<String> pipeline = Pipeline.<String>builder()
+				.stage("parse", 1, line -> line.split(","))
+				//过滤掉格式错误的记录
+				.stage("validate", 1, fields -> fields.length == 2 ? fields : null)
+				.stage("enrich", 4, fields -> {
+					try {
+						TimeUnit.MICROSECONDS.sleep(200);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					return new String[] {fields[0], fields[1], "region-" + (fields[0].hashCode() & 7)};
+				})
+				.stage("transform", 1, fields -> fields[0].toUpperCase() + "|" + fields[1] + "|" + fields[2])
+				.stage("format", 1, record -> "{" + record + "}")
+				.capacity(256)
+				.build(record -> loaded.increment());
+		
+		for(int i = 0; i < 20_000; i++) {
+			pipeline.submit(i % 100 == 0 ? "broken" : "user-" + i + "," + i);
+		}
+		pipeline.shutdown();
+		pipeline.awaitTermination(1, TimeUnit.MINUTES);
+		System.out.println(pipeline);
+		System.out.println("loaded " + loaded.sum() + " records, bottleneck: " + pipeline.bottleneck().getName());
+	}
+}
@@ -0,0 +1,36 @@
+package com.lbq.concurrent.chapter26;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.MetricSet;
+/**
+ * PipelineMetricSet将每个阶段的统计数据以Gauge的形式暴露出来，与chapter25中的CacheMetricSet一样，
+ * 调用一次registry.registerAll即可注册流水线的所有Metric，Metric的名称以构造时传入的name以及阶段的名称为前缀，例如：
+ * etl.parse.throughput、etl.enrich.queue-depth、etl.load.mean-process-nanos
+ * @author 14378
+ *
+ */
+public class PipelineMetricSet implements MetricSet {
+	
+	private final Map<String, Metric> metrics = new HashMap<>();
+	
+	public PipelineMetricSet(String name, Pipeline<?> pipeline) {
+		for(PipelineStage stage : pipeline.stages()) {
+			metrics.put(MetricRegistry.name(name, stage.getName(), "processed"), (Gauge<Long>) stage::processedCount);
+			metrics.put(MetricRegistry.name(name, stage.getName(), "failures"), (Gauge<Long>) stage::failureCount);
+			metrics.put(MetricRegistry.name(name, stage.getName(), "queue-depth"), (Gauge<Integer>) stage::queueDepth);
+			metrics.put(MetricRegistry.name(name, stage.getName(), "throughput"), (Gauge<Double>) stage::throughput);
+			metrics.put(MetricRegistry.name(name, stage.getName(), "mean-process-nanos"), (Gauge<Double>) stage::meanProcessNanos);
+		}
+	}
+
+	@Override
+	public Map<String, Metric> getMetrics() {
+		return Collections.unmodifiableMap(metrics);
+	}
+}
@@ -0,0 +1,106 @@
+package com.lbq.concurrent.chapter26;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+/**
+ * 流水线(Pipeline)中的一个阶段，除了加工方法之外还记录了该阶段的统计数据，用于找出流水线的瓶颈：
+ * 1.processedCount：成功加工的个数，除以运行时间即为吞吐量。
+ * 2.meanProcessNanos：加工一个元素的平均耗时。
+ * 3.queueDepth：在该阶段的传送带上等待加工的元素个数，与上一个阶段融合(fused)的阶段没有自己的传送带，始终为0。
+ * 4.failureCount：加工时抛出异常的个数，这些元素会被丢弃。
+ * 统计数据使用LongAdder记录，多个工人同时加工时不会相互竞争。
+ * @author 14378
+ *
+ */
+public class PipelineStage {
+	
+	private final String name;
+	
+	private final int parallelism;
+	
+	private final Function<Object, Object> function;
+	
+	private final LongAdder processed = new LongAdder();
+	
+	private final LongAdder failures = new LongAdder();
+	
+	private final LongAdder busyNanos = new LongAdder();
+	//由Pipeline在构建时设置
+	private volatile IntSupplier queueDepth = () -> 0;
+	
+	private volatile boolean fused;
+	
+	private volatile long startNanos = System.nanoTime();
+	
+	@SuppressWarnings("unchecked")
+	PipelineStage(String name, int parallelism, Function<?, ?> function) {
+		if(parallelism <= 0) {
+			throw new IllegalArgumentException("the parallelism must be positive.");
+		}
+		this.name = name;
+		this.parallelism = parallelism;
+		this.function = (Function<Object, Object>) function;
+	}
+	
+	Function<Object, Object> function() {
+		return function;
+	}
+	
+	void start(IntSupplier queueDepth, boolean fused) {
+		this.queueDepth = queueDepth;
+		this.fused = fused;
+		this.startNanos = System.nanoTime();
+	}
+	
+	void recordSuccess(long nanos) {
+		processed.increment();
+		busyNanos.add(nanos);
+	}
+	
+	void recordFailure(long nanos) {
+		failures.increment();
+		busyNanos.add(nanos);
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public int getParallelism() {
+		return parallelism;
+	}
+	//是否与上一个阶段融合，即由同一个线程直接传递，不经过传送带
+	public boolean isFused() {
+		return fused;
+	}
+	
+	public long processedCount() {
+		return processed.sum();
+	}
+	
+	public long failureCount() {
+		return failures.sum();
+	}
+	
+	public int queueDepth() {
+		return queueDepth.getAsInt();
+	}
+	//启动以来每秒加工的个数
+	public double throughput() {
+		long elapsed = System.nanoTime() - startNanos;
+		return elapsed <= 0 ? 0.0 : processedCount() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+	}
+	
+	public double meanProcessNanos() {
+		long count = processed.sum() + failures.sum();
+		return count == 0 ? 0.0 : (double) busyNanos.sum() / count;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[parallelism=%d, fused=%s, processed=%d, failures=%d, queueDepth=%d, throughput=%.1f/s, mean=%.0fns]", 
+				name, parallelism, fused, processedCount(), failureCount(), queueDepth(), throughput(), meanProcessNanos());
+	}
+}
@@ -0,0 +1,87 @@
+package com.lbq.concurrent.chapter26;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+/**
+ * 与JMHExample22一样，通过GCProfiler比较传送带在非池化模式和池化模式下的内存分配情况，
+ * 每次基准方法的调用都是放置一个产品然后再将其取出(池化模式下还需要归还)。
+ * 
+ * 关注输出中的gc.alloc.rate.norm，即每次调用分配的字节数：
+ * allocating每次调用都会创建一个新的Production，而pooled在稳定运行时应该为0(或者接近于0)，gc.count同样应该为0。
+ * @author 14378
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class PooledProductionBenchmark {
+	
+	private final static int CAPACITY = 1024;
+	
+	@Param({"true", "false"})
+	private boolean singleProducer;
+	
+	private RingGroup<Production> allocating;
+	
+	private RingGroup<Production> pooled;
+	
+	private final Production[] batch = new Production[ProductionChannel.BATCH_SIZE];
+	
+	private int prodID;
+	
+	@Setup
+	public void init() {
+		this.allocating = new RingGroup<>(1, CAPACITY, singleProducer);
+		this.pooled = new RingGroup<>(1, CAPACITY, singleProducer, () -> new Production(0));
+	}
+
+	@Benchmark
+	public void allocating(Blackhole blackhole) throws InterruptedException {
+		allocating.put(new Production(prodID++));
+		int count = allocating.drainTo(0, batch);
+		for(int i = 0; i < count; i++) {
+			blackhole.consume(batch[i]);
+			batch[i] = null;
+		}
+	}
+	
+	@Benchmark
+	public void pooled(Blackhole blackhole) throws InterruptedException {
+		pooled.put(prodID++, Production::reset);
+		int count = pooled.acquire(0, batch);
+		for(int i = 0; i < count; i++) {
+			blackhole.consume(batch[i]);
+		}
+		pooled.release(0, count);
+	}
+	
+	public static void main(String[] args) throws RunnerException {
+		final Options opts = new OptionsBuilder()
+				.include(PooledProductionBenchmark.class.getSimpleName())
+				//add GcProfiler输出基准方法执行过程的GC信息
+				.addProfiler(GCProfiler.class)
+				.jvmArgsAppend("-Xmx128M")
+				.build();
+		new Runner(opts).run();
+	}
+}
@@ -1,16 +1,23 @@
 package com.lbq.concurrent.chapter26;
 /**
  * 传送带上的产品除了说明书以外还需要有产品自身，产品继承了说明书，每个产品都有产品编号，通用Production的代码如下。
+ * 
+ * 在ProductionChannel的池化模式下，同一个Production对象会被反复填充不同的产品编号，因此prodID不再是final的，
+ * 它的可见性由传送带的发布(publish)和归还(release)保证。
  * @author 14378
  *
  */
 public class Production extends InstructionBook {
 	//产品编号
-	private final int prodID;
+	private int prodID;
 	
 	public Production(int prodID) {
 		this.prodID = prodID;
 	}
+	//池化模式下填充新的产品编号
+	void reset(int prodID) {
+		this.prodID = prodID;
+	}
 	@Override
 	protected void firstProcess() {
 		System.out.println("execute the " + prodID + " first process");
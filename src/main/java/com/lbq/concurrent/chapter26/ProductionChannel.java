@@ -1,4 +1,11 @@
 package com.lbq.concurrent.chapter26;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 /**
  * 26.2.2 流水线传送带
  * 流水线的传送带主要用于传送待加工的产品，上游的工作人员将完成的半成品放到传送带上，工作人员从传送带上取下产品进行再次加工，
@@ -8,76 +15,406 @@ package com.lbq.concurrent.chapter26;
  * 
  * 传送带是搁置产品的地方，如果工人们处理比较慢则会导致无限制的产品积压，因此我们需要做的是让上游的流水线阻塞并且等待，直至流水线有位置可以用于放置新的产品为止，
  * MAX_PROD的作用就在于此，其用于控制传送带的最大容量，传送带被创建的同时，流水线上的工人们也已经就绪到位，等待着流水线产品的到来。
+ * 
+ * 传送带的实现是无锁的：
+ * 1.每个工人拥有一条属于自己的无锁环形传送带，见RingGroup，传送带的最大容量仍然是MAX_PROD。
+ * 2.工人一次可以批量取下多个产品(最多BATCH_SIZE个)。
+ * 3.放置或者获取产品失败时通过Backoff等待，不需要任何线程之间的通知。
+ * 4.等待期间被中断会抛出InterruptedException，工人线程被中断之后即退出。
+ * 
+ * 固定数量的工人在空闲时同样占用着线程资源，因此工人的数量可以在[minWorkers, maxWorkers]之间弹性伸缩，
+ * 由一个后台线程(Scaler)每隔SCALE_INTERVAL_MILLIS检查一次：
+ * 1.根据积压的产品个数(包括工人已经取下但是还没有加工的)以及加工一个产品的平均耗时估算出需要多少个工人才能在一个周期内处理完积压，每次最多增加一倍。
+ * 2.连续IDLE_TICKS个周期没有积压并且工人的忙碌时间不足一半时，减少一个工人。
+ * 3.每个工人位置(slot)有RUNNING、RETIRING、EXITED三种状态，被减少的工人先进入RETIRING，不再接收新的产品，
+ *   加工完自己传送带上的产品之后通过CAS进入EXITED并退出；RETIRING的工人在退出之前可以被重新启用。
+ * 4.减少工人时，已经在放置产品的上游线程仍然可能把产品放到该工人的传送带上，Scaler会为这些传送带重新启动一个RETIRING的工人将其加工完。
+ * 5.shutdown之后不再接受新的产品，所有的工人加工完传送带上的产品之后退出(drain)，shutdownNow则直接中断所有的工人。
+ *   shutdown不会等待正在放置产品的上游线程，因为传送带已满而阻塞的上游线程会抛出IllegalStateException，
+ *   shutdown本身也持有一个offering计数，最后一个离开offerProduction的线程(可能是shutdown自己)负责将工人设置为RETIRING，
+ *   这样不会有产品在工人退出之后才被放到传送带上。
+ * 
+ * 每个产品都是新创建的Production对象，吞吐量很高时会给年轻代GC带来压力，因此提供了可选的池化(pooled)模式：
+ * 传送带上的Production在创建时预先分配好，上游线程通过offerProduction(int)在槽位上直接填充产品编号，
+ * 工人加工完之后将槽位归还给传送带，传送带本身就是对象池，稳定运行时不会创建任何对象，见SlotRingBuffer。
  * @author 14378
  *
  */
 public class ProductionChannel {
-	//传送带上最多可以有多少个待加工的产品
+	//传送带上最多可以有多少个待加工的产品(按照最少的工人数计算)
 	private final static int MAX_PROD = 100;
-	//主要用来存放待加工的产品，也就是传送带
-	private final Production[] productionQueue;
-	//队列尾
-	private int tail;
-	//队列头
-	private int head;
-	//当前在流水线上有多少个待加工的产品
-	private int total;
-	//在流水线上工作的工人
+	//工人一次最多从传送带上取下多少个产品
+	final static int BATCH_SIZE = 16;
+	
+	private final static long SCALE_INTERVAL_MILLIS = 100;
+	
+	private final static int IDLE_TICKS = 10;
+	
+	private final static int EXITED = 0;
+	
+	private final static int RUNNING = 1;
+	
+	private final static int RETIRING = 2;
+	//每个工人一条传送带
+	private final RingGroup<Production> conveyor;
+	//工人加工产品的方式，默认按照说明书加工，见Worker.assemble
+	private final Consumer<? super Production> processor;
+	//在流水线上工作的工人，下标即传送带的编号
 	private final Worker[] workers;
+	//每个工人位置的状态
+	private final AtomicIntegerArray states;
+	
+	private final int minWorkers;
+	
+	private final int maxWorkers;
+	//接收新产品的工人数，只会被Scaler以及shutdown在持有this monitor时修改
+	private volatile int active;
+	//尚未退出的工人线程数
+	private final AtomicInteger live = new AtomicInteger();
+	//正在执行offerProduction的线程数，shutdown之后降为0时开始drain
+	private final AtomicInteger offering = new AtomicInteger();
+	
+	//工人已经取下的产品个数，与processed的差值即工人手上还没有加工的产品
+	private final LongAdder taken = new LongAdder();
+	
+	private final LongAdder processed = new LongAdder();
+	
+	private final LongAdder busyNanos = new LongAdder();
+	
+	private final CountDownLatch terminated = new CountDownLatch(1);
+	
+	private final Thread scaler;
+	
+	private volatile boolean shutdown;
+	//所有的工人都已经被设置为RETIRING，工人全部退出即终止
+	private volatile boolean draining;
+	//调用了shutdownNow，drain时不再为剩余的产品启动工人
+	private volatile boolean stopped;
+	//以下字段只会被Scaler在持有this monitor时访问
+	private long lastProcessed;
+	
+	private long lastBusyNanos;
+	
+	private long lastTickNanos = System.nanoTime();
+	
+	private double meanProcessNanos;
+	
+	private int idleTicks;
 	/**
-	 * 创建ProductionChannel时应指定需要多少个流水线工人
+	 * 创建ProductionChannel时应指定需要多少个流水线工人，默认允许多个上游线程同时放置产品，工人数量固定
 	 * @param workerSize
 	 */
 	public ProductionChannel(int workerSize) {
-		this.workers = new Worker[workerSize];
-		this.productionQueue = new Production[MAX_PROD];
+		this(workerSize, false);
+	}
+	/**
+	 * @param workerSize 流水线工人的数量
+	 * @param singleProducer 是否只有一个上游线程放置产品，为true时调用者需要保证这一点
+	 */
+	public ProductionChannel(int workerSize, boolean singleProducer) {
+		this(workerSize, workerSize, singleProducer);
+	}
+	/**
+	 * 工人数量在[minWorkers, maxWorkers]之间弹性伸缩，两者相等时工人数量固定，不会启动Scaler
+	 * @param minWorkers 最少的工人数
+	 * @param maxWorkers 最多的工人数
+	 * @param singleProducer 是否只有一个上游线程放置产品，为true时调用者需要保证这一点
+	 */
+	public ProductionChannel(int minWorkers, int maxWorkers, boolean singleProducer) {
+		this(minWorkers, maxWorkers, singleProducer, false);
+	}
+	/**
+	 * @param minWorkers 最少的工人数
+	 * @param maxWorkers 最多的工人数
+	 * @param singleProducer 是否只有一个上游线程放置产品，为true时调用者需要保证这一点
+	 * @param pooled 是否使用池化模式，池化模式下只能通过offerProduction(int)放置产品
+	 */
+	public ProductionChannel(int minWorkers, int maxWorkers, boolean singleProducer, boolean pooled) {
+		this(minWorkers, maxWorkers, singleProducer, pooled, Worker::assemble);
+	}
+	/**
+	 * @param minWorkers 最少的工人数
+	 * @param maxWorkers 最多的工人数
+	 * @param singleProducer 是否只有一个上游线程放置产品，为true时调用者需要保证这一点
+	 * @param pooled 是否使用池化模式，池化模式下只能通过offerProduction(int)放置产品
+	 * @param processor 工人加工每一个产品的方式，池化模式下不能在其之外持有该产品
+	 */
+	public ProductionChannel(int minWorkers, int maxWorkers, boolean singleProducer, boolean pooled, Consumer<? super Production> processor) {
+		if(minWorkers <= 0 || maxWorkers < minWorkers) {
+			throw new IllegalArgumentException("illegal worker bounds: [" + minWorkers + ", " + maxWorkers + "]");
+		}
+		this.processor = processor;
+		this.minWorkers = minWorkers;
+		this.maxWorkers = maxWorkers;
+		this.workers = new Worker[maxWorkers];
+		this.states = new AtomicIntegerArray(maxWorkers);
+		int ringCapacity = (MAX_PROD + minWorkers - 1) / minWorkers;
+		this.conveyor = pooled 
+				? new RingGroup<>(maxWorkers, ringCapacity * maxWorkers, singleProducer, () -> new Production(0)) 
+				: new RingGroup<>(maxWorkers, ringCapacity * maxWorkers, singleProducer);
+		this.conveyor.setActive(minWorkers);
+		this.active = minWorkers;
 		//实例化每一个工人(Worker线程)并且启动
-		for(int i = 0; i < workerSize; i++) {
-			workers[i] = new Worker("Worker-" + i, this);
-			workers[i].start();
+		synchronized(this) {
+			for(int i = 0; i < minWorkers; i++) {
+				startWorker(i, RUNNING);
+			}
+		}
+		if(minWorkers < maxWorkers) {
+			this.scaler = new Thread(this::scale, "ProductionChannel-Scaler");
+			this.scaler.setDaemon(true);
+			this.scaler.start();
+		}else {
+			this.scaler = null;
 		}
 	}
 	/**
-	 * 接受来自上游的半成品(待加工的产品)
+	 * 接受来自上游的半成品(待加工的产品)，所有的传送带都已满时阻塞上游线程
 	 * @param production
+	 * @throws InterruptedException
+	 * @throws IllegalStateException 已经被shutdown
+	 */
+	public void offerProduction(Production production) throws InterruptedException {
+		offering.incrementAndGet();
+		try {
+			if(shutdown) {
+				throw new IllegalStateException("the channel has been shut down.");
+			}
+			conveyor.put(production);
+		}finally {
+			offered();
+		}
+	}
+	/**
+	 * 根据产品编号放置产品，池化模式下直接填充传送带上预先分配好的Production，否则创建一个新的Production
+	 * @param prodID 产品编号
+	 * @throws InterruptedException
+	 * @throws IllegalStateException 已经被shutdown
+	 */
+	public void offerProduction(int prodID) throws InterruptedException {
+		offering.incrementAndGet();
+		try {
+			if(shutdown) {
+				throw new IllegalStateException("the channel has been shut down.");
+			}
+			if(conveyor.isPooled()) {
+				conveyor.put(prodID, Production::reset);
+			}else {
+				conveyor.put(new Production(prodID));
+			}
+		}finally {
+			offered();
+		}
+	}
+	/**
+	 * 工人线程(worker)从自己的传送带上批量获取产品，不会阻塞，池化模式下这些产品在releaseProduction之前一直属于该工人
+	 * @param worker 工人的编号
+	 * @param batch 存放取下的产品
+	 * @return 取下的产品个数
+	 */
+	int pollProductions(int worker, Production[] batch) {
+		int count = conveyor.isPooled() ? conveyor.acquire(worker, batch) : conveyor.drainTo(worker, batch);
+		if(count > 0) {
+			taken.add(count);
+		}
+		return count;
+	}
+	/**
+	 * 工人加工完一个产品，池化模式下将其所在的槽位归还给传送带，必须按照获取的顺序调用
+	 */
+	void releaseProduction(int worker) {
+		if(conveyor.isPooled()) {
+			conveyor.release(worker, 1);
+		}
+	}
+	//工人是否应该在加工完传送带上的产品之后退出
+	boolean isRetiring(int worker) {
+		return states.get(worker) == RETIRING;
+	}
+	/**
+	 * 工人在传送带为空时尝试退出，如果在此期间被Scaler重新启用则失败。
+	 * 读取到旧的active的上游线程可能在工人取产品之后才把产品放到传送带上，而drain会跳过还处于RETIRING的工人，
+	 * 因此进入EXITED之后需要再检查一次传送带，不为空时重新回到RETIRING继续加工，
+	 * 回到RETIRING失败说明Scaler或者drain已经为该传送带启动了新的工人。
+	 * @return 是否可以退出
 	 */
-	public void offerProduction(Production production) {
+	boolean retire(int worker) {
+		if(!states.compareAndSet(worker, RETIRING, EXITED)) {
+			return false;
+		}
+		return conveyor.size(worker) == 0 || !states.compareAndSet(worker, EXITED, RETIRING);
+	}
+	//工人被中断，放弃自己的位置
+	void abandon(int worker) {
+		states.set(worker, EXITED);
+	}
+	
+	void workerExited() {
+		if(live.decrementAndGet() == 0 && draining) {
+			terminated.countDown();
+		}
+	}
+	
+	//工人加工一个产品
+	void process(Production production) {
+		processor.accept(production);
+	}
+	
+	void recordProcessed(long nanos) {
+		processed.increment();
+		busyNanos.add(nanos);
+	}
+	/**
+	 * 不再接受新的产品，已经放到传送带上的产品会被全部加工完毕，然后工人退出，不会阻塞
+	 */
+	public void shutdown() {
+		synchronized(this) {
+			if(shutdown) {
+				return;
+			}
+			//shutdown自己也占有一个计数，保证在shutdown被设置之前offering不会降为0
+			offering.incrementAndGet();
+			shutdown = true;
+		}
+		//唤醒因为传送带已满而等待的上游线程
+		conveyor.close();
+		if(scaler != null) {
+			scaler.interrupt();
+		}
+		offered();
+	}
+	/**
+	 * 中断所有的工人线程，传送带上剩余的产品不会被加工，因为传送带已满而等待的上游线程会抛出IllegalStateException
+	 */
+	public void shutdownNow() {
 		synchronized(this) {
-			//当传送带上待加工的产品超过了最大值时需要阻塞上游再次传送产品
-			while(total >= productionQueue.length) {
-				try {
-					this.wait();
-				}catch(InterruptedException e) {
-					
+			stopped = true;
+			for(Worker worker : workers) {
+				if(worker != null) {
+					worker.interrupt();
 				}
 			}
-			//将产品放到传送带，并且通知工人线程工作
-			productionQueue[tail] = production;
-			tail = (tail + 1) % productionQueue.length;
-			total++;
-			this.notifyAll();
+		}
+		shutdown();
+	}
+	//离开offerProduction，shutdown之后最后一个离开的线程开始drain
+	private void offered() {
+		if(offering.decrementAndGet() == 0 && shutdown) {
+			drain();
 		}
 	}
 	/**
-	 * 工人线程(worker)从传送带上获取产品，并且进行加工
-	 * @return
+	 * 此时已经不会再有产品被放到传送带上，将所有的工人设置为RETIRING，
+	 * 被减少的工人退出之后又被放上了产品的传送带需要重新启动一个RETIRING的工人
 	 */
-	public Production takeProduction() {
-		synchronized (this) {
-			//当传送带上没有产品时，工人等待着产品从上游输送到传送带
-			while(total <= 0) {
-				try {
-					this.wait();
-				}catch(InterruptedException e) {
-					
+	private synchronized void drain() {
+		if(draining) {
+			return;
+		}
+		for(int i = 0; i < maxWorkers; i++) {
+			if(!states.compareAndSet(i, RUNNING, RETIRING) && states.get(i) == EXITED && conveyor.size(i) > 0 && !stopped) {
+				startWorker(i, RETIRING);
+			}
+		}
+		draining = true;
+		if(live.get() == 0) {
+			terminated.countDown();
+		}
+	}
+	/**
+	 * 等待所有的工人线程退出
+	 * @return 超时返回false
+	 * @throws InterruptedException
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return terminated.await(timeout, unit);
+	}
+	//当前接收新产品的工人数
+	public int getWorkerCount() {
+		return active;
+	}
+	//积压的产品个数，包括传送带上的以及工人已经批量取下但是还没有加工的
+	public int getBacklog() {
+		return (int) Math.max(0, conveyor.size() + taken.sum() - processed.sum());
+	}
+	
+	private void startWorker(int index, int state) {
+		states.set(index, state);
+		live.incrementAndGet();
+		workers[index] = new Worker("Worker-" + index, this, index);
+		workers[index].start();
+	}
+	
+	private void scale() {
+		try {
+			for(;;) {
+				TimeUnit.MILLISECONDS.sleep(SCALE_INTERVAL_MILLIS);
+				synchronized(this) {
+					if(shutdown) {
+						return;
+					}
+					tick();
 				}
 			}
-			//获取产品
-			Production prod = productionQueue[head];
-			head = (head + 1) % productionQueue.length;
-			total--;
-			this.notifyAll();
-			return prod;
+		} catch (InterruptedException e) {
+			//被shutdown中断，退出
 		}
 	}
+	
+	private void tick() {
+		long now = System.nanoTime();
+		long processed = this.processed.sum();
+		long busyNanos = this.busyNanos.sum();
+		long deltaProcessed = processed - lastProcessed;
+		long deltaBusy = busyNanos - lastBusyNanos;
+		long elapsed = now - lastTickNanos;
+		lastProcessed = processed;
+		lastBusyNanos = busyNanos;
+		lastTickNanos = now;
+		if(deltaProcessed > 0) {
+			meanProcessNanos = (double) deltaBusy / deltaProcessed;
+		}
+		int backlog = getBacklog();
+		if(backlog > 0) {
+			idleTicks = 0;
+			//在一个周期内处理完积压需要的工人数，还不知道平均耗时的时候逐个增加
+			int desired = meanProcessNanos > 0 
+					? (int) Math.min(maxWorkers, Math.ceil(backlog * meanProcessNanos / TimeUnit.MILLISECONDS.toNanos(SCALE_INTERVAL_MILLIS))) 
+					: active + 1;
+			desired = Math.min(Math.min(desired, active * 2), maxWorkers);
+			while(active < desired) {
+				scaleUp();
+			}
+		}else if(active > minWorkers && deltaBusy < active * elapsed / 2) {
+			if(++idleTicks >= IDLE_TICKS) {
+				idleTicks = 0;
+				scaleDown();
+			}
+		}else {
+			idleTicks = 0;
+		}
+		//被减少的工人退出之后又被放上了产品的传送带
+		for(int i = active; i < maxWorkers; i++) {
+			if(states.get(i) == EXITED && conveyor.size(i) > 0) {
+				startWorker(i, RETIRING);
+			}
+		}
+	}
+	
+	private void scaleUp() {
+		int index = active;
+		//RETIRING的工人还没有退出则直接重新启用
+		if(!states.compareAndSet(index, RETIRING, RUNNING)) {
+			startWorker(index, RUNNING);
+		}
+		active = index + 1;
+		conveyor.setActive(active);
+	}
+	
+	private void scaleDown() {
+		int index = active - 1;
+		active = index;
+		conveyor.setActive(index);
+		states.set(index, RETIRING);
+	}
 }
@@ -0,0 +1,28 @@
+package com.lbq.concurrent.chapter26;
+/**
+ * RingBuffer是传送带的无锁实现，所有的方法都不会阻塞，阻塞(等待)的策略交给调用者决定，
+ * 根据生产者的数量有两种实现：
+ * 1.SpscRingBuffer：单生产者单消费者。
+ * 2.MpscRingBuffer：多生产者单消费者。
+ * 两种实现都只允许一个消费者线程调用poll和drainTo。
+ * @author 14378
+ *
+ * @param <E>
+ */
+public interface RingBuffer<E> {
+	//放入元素，传送带已满时返回false
+	boolean offer(E e);
+	//取出元素，传送带为空时返回null
+	E poll();
+	/**
+	 * 批量取出元素，一次批量操作只需要更新一次head
+	 * @param batch 存放取出的元素
+	 * @param limit 最多取出的个数，不能超过batch的长度
+	 * @return 取出的元素个数
+	 */
+	int drainTo(E[] batch, int limit);
+	//当前的元素个数，在并发修改时只是一个估算值
+	int size();
+	
+	int capacity();
+}
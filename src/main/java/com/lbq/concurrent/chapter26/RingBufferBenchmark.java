@@ -0,0 +1,175 @@
+package com.lbq.concurrent.chapter26;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+/**
+ * 使用@Group将生产者和消费者放在同一组中进行基准测试，比较SpscRingBuffer、MpscRingBuffer以及ArrayBlockingQueue的吞吐量，
+ * spscBatch一组中消费者通过drainTo批量取出元素。
+ * 传送带上的操作都是非阻塞的，传送带已满或者为空时的失败操作同样会被计入基准方法的吞吐量，
+ * 因此通过@AuxCounters只统计成功的操作，输出中的offered和polled才是每秒真正传送的元素个数。
+ *
+ * channel一组则驱动整个ProductionChannel：上游线程通过offerProduction放置产品，只有放置成功之后才会返回，因此其吞吐量就是传送的产品个数，
+ * 产品由ProductionChannel自己的工人线程取下并加工，加工的方式是一个空操作，因此测量的是传送带本身的吞吐量，
+ * pooled为true时使用池化模式。传送带的容量是有限的，稳定运行时放置的速度即工人加工的速度。
+ * @author 14378
+ *
+ */
+@Measurement(iterations = 10)
+@Warmup(iterations = 10)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RingBufferBenchmark {
+
+	private final static int CAPACITY = 1024;
+
+	@State(Scope.Group)
+	public static class Rings {
+		private final Production production = new Production(0);
+		private final RingBuffer<Production> spsc = new SpscRingBuffer<>(CAPACITY);
+		private final RingBuffer<Production> mpsc = new MpscRingBuffer<>(CAPACITY);
+		private final ArrayBlockingQueue<Production> blockingQueue = new ArrayBlockingQueue<>(CAPACITY);
+		private final Production[] batch = new Production[ProductionChannel.BATCH_SIZE];
+	}
+
+	@State(Scope.Group)
+	public static class Channel {
+		@Param({"false", "true"})
+		private boolean pooled;
+
+		private ProductionChannel channel;
+
+		private int prodID;
+
+		@Setup(Level.Trial)
+		public void start() {
+			this.channel = new ProductionChannel(1, 1, true, pooled, production -> {});
+		}
+
+		@TearDown(Level.Trial)
+		public void stop() throws InterruptedException {
+			channel.shutdownNow();
+			channel.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+	//每个线程成功的操作次数，每一轮迭代开始时清零
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Transfers {
+		public long offered;
+
+		public long polled;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			offered = 0;
+			polled = 0;
+		}
+	}
+	@GroupThreads(1)
+	@Group("spsc")
+	@Benchmark
+	public void spscOffer(Rings rings, Transfers transfers) {
+		if(rings.spsc.offer(rings.production)) {
+			transfers.offered++;
+		}
+	}
+	@GroupThreads(1)
+	@Group("spsc")
+	@Benchmark
+	public Production spscPoll(Rings rings, Transfers transfers) {
+		Production production = rings.spsc.poll();
+		if(production != null) {
+			transfers.polled++;
+		}
+		return production;
+	}
+	@GroupThreads(1)
+	@Group("spscBatch")
+	@Benchmark
+	public void spscBatchOffer(Rings rings, Transfers transfers) {
+		if(rings.spsc.offer(rings.production)) {
+			transfers.offered++;
+		}
+	}
+	@GroupThreads(1)
+	@Group("spscBatch")
+	@Benchmark
+	public void spscDrain(Rings rings, Transfers transfers, Blackhole blackhole) {
+		int count = rings.spsc.drainTo(rings.batch, rings.batch.length);
+		for(int i = 0; i < count; i++) {
+			blackhole.consume(rings.batch[i]);
+		}
+		transfers.polled += count;
+	}
+	@GroupThreads(3)
+	@Group("mpsc")
+	@Benchmark
+	public void mpscOffer(Rings rings, Transfers transfers) {
+		if(rings.mpsc.offer(rings.production)) {
+			transfers.offered++;
+		}
+	}
+	@GroupThreads(1)
+	@Group("mpsc")
+	@Benchmark
+	public Production mpscPoll(Rings rings, Transfers transfers) {
+		Production production = rings.mpsc.poll();
+		if(production != null) {
+			transfers.polled++;
+		}
+		return production;
+	}
+	@GroupThreads(3)
+	@Group("blockingQueue")
+	@Benchmark
+	public void blockingQueueOffer(Rings rings, Transfers transfers) {
+		if(rings.blockingQueue.offer(rings.production)) {
+			transfers.offered++;
+		}
+	}
+	@GroupThreads(1)
+	@Group("blockingQueue")
+	@Benchmark
+	public Production blockingQueuePoll(Rings rings, Transfers transfers) {
+		Production production = rings.blockingQueue.poll();
+		if(production != null) {
+			transfers.polled++;
+		}
+		return production;
+	}
+	@GroupThreads(1)
+	@Group("channel")
+	@Benchmark
+	public void channelOffer(Channel channel) throws InterruptedException {
+		channel.channel.offerProduction(channel.prodID++);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opts = new OptionsBuilder()
+				.include(RingBufferBenchmark.class.getSimpleName())
+				.forks(1)
+				.build();
+		new Runner(opts).run();
+	}
+}
@@ -0,0 +1,207 @@
+package com.lbq.concurrent.chapter26;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
+/**
+ * 一组单消费者的无锁传送带，每个消费者(工人)拥有属于自己的一条，这样只需要SpscRingBuffer和MpscRingBuffer两种实现：
+ * 1.只有一个上游线程时使用SpscRingBuffer，否则使用MpscRingBuffer。
+ * 2.上游线程从某一条传送带开始依次尝试放置，单生产者时轮流选择起始的传送带，多生产者时随机选择，某条传送带已满时尝试下一条，
+ *   所有的传送带都已满时通过Backoff等待，因此下游的积压会一直阻塞到上游(背压)。
+ * 3.只有前active条传送带会接收新的元素，用于动态地增减消费者，见ProductionChannel。
+ * 4.池化(pooled)模式下使用预先分配好元素的SlotRingBuffer，上游线程通过put(value, filler)在槽位上直接填充数据，
+ *   消费者通过acquire取得槽位上的元素，加工完之后通过release归还，整个过程不会创建任何对象。
+ * 5.close之后，因为传送带已满而等待的上游线程会抛出IllegalStateException，不会一直阻塞在已经停止接收的传送带上。
+ * @author 14378
+ *
+ * @param <E>
+ */
+final class RingGroup<E> {
+	
+	//非池化模式的传送带
+	private final RingBuffer<E>[] rings;
+	//池化模式的传送带
+	private final SlotRingBuffer<E>[] slotRings;
+	
+	private final boolean singleProducer;
+	//单生产者时下一次放置的起始传送带，只会被一个线程访问
+	private int nextRing;
+	//接收新元素的传送带条数
+	private volatile int active;
+	//被关闭之后等待放置的线程不再等待
+	private volatile boolean closed;
+	/**
+	 * @param size 传送带的条数，即消费者的个数
+	 * @param capacity 所有传送带的总容量
+	 * @param singleProducer 是否只有一个上游线程，为true时调用者需要保证这一点
+	 */
+	RingGroup(int size, int capacity, boolean singleProducer) {
+		this.rings = newRings(size);
+		this.slotRings = null;
+		this.singleProducer = singleProducer;
+		this.active = size;
+		int ringCapacity = ringCapacity(size, capacity);
+		for(int i = 0; i < size; i++) {
+			rings[i] = singleProducer ? new SpscRingBuffer<>(ringCapacity) : new MpscRingBuffer<>(ringCapacity);
+		}
+	}
+	/**
+	 * 池化模式
+	 * @param size 传送带的条数，即消费者的个数
+	 * @param capacity 所有传送带的总容量，即预先分配的元素个数(会向上取整为2的幂)
+	 * @param singleProducer 是否只有一个上游线程，为true时调用者需要保证这一点
+	 * @param factory 用于预先分配元素
+	 */
+	RingGroup(int size, int capacity, boolean singleProducer, Supplier<? extends E> factory) {
+		this.rings = null;
+		this.slotRings = newSlotRings(size);
+		this.singleProducer = singleProducer;
+		this.active = size;
+		int ringCapacity = ringCapacity(size, capacity);
+		for(int i = 0; i < size; i++) {
+			slotRings[i] = new SlotRingBuffer<>(ringCapacity, singleProducer, factory);
+		}
+	}
+	
+	boolean isPooled() {
+		return slotRings != null;
+	}
+	/**
+	 * 放置元素，所有的传送带都已满时阻塞
+	 * @param e
+	 * @throws InterruptedException
+	 * @throws IllegalStateException 等待期间传送带被关闭
+	 */
+	void put(E e) throws InterruptedException {
+		if(isPooled()) {
+			throw new IllegalStateException("the ring group is pooled, use put(value, filler) instead.");
+		}
+		int idles = 0;
+		for(;;) {
+			int active = this.active;
+			int start = nextStart(active);
+			for(int i = 0; i < active; i++) {
+				if(rings[(start + i) % active].offer(e)) {
+					return;
+				}
+			}
+			checkClosed();
+			Backoff.idle(idles++);
+		}
+	}
+	/**
+	 * 池化模式下放置元素：申请一个槽位，通过filler将value填充到槽位上的元素，然后发布，所有的传送带都已满时阻塞
+	 * @param value
+	 * @param filler 不应该捕获任何变量，这样每次调用都不会创建新的lambda对象
+	 * @throws InterruptedException
+	 * @throws IllegalStateException 等待期间传送带被关闭
+	 */
+	void put(int value, ObjIntConsumer<? super E> filler) throws InterruptedException {
+		int idles = 0;
+		for(;;) {
+			int active = this.active;
+			int start = nextStart(active);
+			for(int i = 0; i < active; i++) {
+				SlotRingBuffer<E> ring = slotRings[(start + i) % active];
+				long sequence = ring.tryClaim();
+				if(sequence >= 0) {
+					filler.accept(ring.slot(sequence), value);
+					ring.publish(sequence);
+					return;
+				}
+			}
+			checkClosed();
+			Backoff.idle(idles++);
+		}
+	}
+	/**
+	 * 池化模式下从第ring条传送带上批量取得元素，不会阻塞，元素在release之前一直属于消费者
+	 * @return 取得的元素个数
+	 */
+	int acquire(int ring, E[] batch) {
+		SlotRingBuffer<E> slotRing = slotRings[ring];
+		int count = slotRing.available(batch.length);
+		for(int i = 0; i < count; i++) {
+			batch[i] = slotRing.peek(i);
+		}
+		return count;
+	}
+	/**
+	 * 池化模式下归还第ring条传送带上最早取得的count个元素
+	 */
+	void release(int ring, int count) {
+		slotRings[ring].release(count);
+	}
+	/**
+	 * 从第ring条传送带上批量取出元素，不会阻塞
+	 * @return 取出的元素个数
+	 */
+	int drainTo(int ring, E[] batch) {
+		return rings[ring].drainTo(batch, batch.length);
+	}
+	//所有传送带上的元素个数
+	int size() {
+		int size = 0;
+		for(int i = 0; i < ringCount(); i++) {
+			size += size(i);
+		}
+		return size;
+	}
+	//第ring条传送带上的元素个数
+	int size(int ring) {
+		return isPooled() ? slotRings[ring].size() : rings[ring].size();
+	}
+	/**
+	 * 设置接收新元素的传送带条数，已经在放置的线程可能仍然会放到第active条之后的传送带上，消费者需要处理这种情况
+	 */
+	void setActive(int active) {
+		if(active <= 0 || active > ringCount()) {
+			throw new IllegalArgumentException("illegal active rings: " + active);
+		}
+		this.active = active;
+	}
+	
+	/**
+	 * 关闭之后，因为传送带已满而等待的上游线程会抛出IllegalStateException，已经放到传送带上的元素仍然可以被取出
+	 */
+	void close() {
+		closed = true;
+	}
+	
+	private void checkClosed() {
+		if(closed) {
+			throw new IllegalStateException("the ring group has been closed.");
+		}
+	}
+	
+	private int ringCount() {
+		return isPooled() ? slotRings.length : rings.length;
+	}
+	
+	//不能直接创建泛型数组，通配符数组中只会存放元素类型为E的传送带
+	@SuppressWarnings("unchecked")
+	private static <E> RingBuffer<E>[] newRings(int size) {
+		return (RingBuffer<E>[]) new RingBuffer<?>[size];
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static <E> SlotRingBuffer<E>[] newSlotRings(int size) {
+		return (SlotRingBuffer<E>[]) new SlotRingBuffer<?>[size];
+	}
+	
+	private static int ringCapacity(int size, int capacity) {
+		return Math.max(2, (capacity + size - 1) / size);
+	}
+	
+	private int nextStart(int active) {
+		if(active == 1) {
+			return 0;
+		}
+		if(singleProducer) {
+			int start = nextRing % active;
+			nextRing = start + 1;
+			return start;
+		}
+		return ThreadLocalRandom.current().nextInt(active);
+	}
+}
@@ -0,0 +1,137 @@
+package com.lbq.concurrent.chapter26;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+/**
+ * 预先分配好所有元素的环形队列，队列本身就是对象池，稳定运行时不会产生任何垃圾：
+ * 1.生产者通过tryClaim申请一个序号，在该序号对应的元素(slot)上直接填充数据，然后通过publish发布。
+ * 2.消费者通过available得到已经发布的元素个数，通过peek直接在槽位上读取元素进行加工，加工完成之后通过release归还，
+ *   归还之后槽位才可以被生产者再次申请，因此消费者在release之前可以放心地使用这些元素。
+ * 3.单生产者时tail只会被生产者修改，publish即lazySet(tail)；多生产者时通过CAS申请序号，由于发布的顺序与申请的顺序可能不同，
+ *   每个槽位通过published记录自己被发布时所在的轮次(round)，消费者只有看到轮次匹配时才认为该槽位已经发布。
+ * 4.只允许一个消费者线程，head、tail的存放方式与SpscRingBuffer一样。
+ * @author 14378
+ *
+ * @param <E>
+ */
+public class SlotRingBuffer<E> {
+	
+	private final static int PADDING = 16;
+	//生产者的缓存行
+	private final static int TAIL = PADDING;
+	
+	private final static int HEAD_CACHE = PADDING + 1;
+	//消费者的缓存行
+	private final static int HEAD = PADDING * 2;
+	
+	private final static int TAIL_CACHE = PADDING * 2 + 1;
+	
+	private final AtomicLongArray sequences = new AtomicLongArray(PADDING * 4);
+	
+	private final Object[] slots;
+	//多生产者时每个槽位被发布时的轮次+1，单生产者时为null
+	private final AtomicIntegerArray published;
+	
+	private final int mask;
+	
+	private final int shift;
+	
+	public SlotRingBuffer(int capacity, boolean singleProducer, Supplier<? extends E> factory) {
+		int size = SpscRingBuffer.ceilingPowerOfTwo(capacity);
+		this.slots = new Object[size];
+		for(int i = 0; i < size; i++) {
+			slots[i] = factory.get();
+		}
+		this.published = singleProducer ? null : new AtomicIntegerArray(size);
+		this.mask = size - 1;
+		this.shift = Integer.numberOfTrailingZeros(size);
+	}
+	/**
+	 * 申请一个槽位
+	 * @return 槽位的序号，队列已满时返回-1
+	 */
+	public long tryClaim() {
+		long tail;
+		do {
+			tail = sequences.get(TAIL);
+			long wrapPoint = tail - slots.length;
+			if(sequences.get(HEAD_CACHE) <= wrapPoint) {
+				long head = sequences.get(HEAD);
+				if(head <= wrapPoint) {
+					return -1L;
+				}
+				sequences.lazySet(HEAD_CACHE, head);
+			}
+			if(published == null) {
+				//单生产者在publish时才移动tail
+				return tail;
+			}
+		}while(!sequences.compareAndSet(TAIL, tail, tail + 1));
+		return tail;
+	}
+	
+	@SuppressWarnings("unchecked")
+	public E slot(long sequence) {
+		return (E) slots[(int) sequence & mask];
+	}
+	
+	public void publish(long sequence) {
+		if(published == null) {
+			sequences.lazySet(TAIL, sequence + 1);
+		}else {
+			published.lazySet((int) sequence & mask, round(sequence));
+		}
+	}
+	/**
+	 * 从head开始已经发布的连续元素个数，只能由消费者调用
+	 * @param limit 最多返回的个数
+	 */
+	public int available(int limit) {
+		long head = sequences.get(HEAD);
+		if(published == null) {
+			long tail = sequences.get(TAIL_CACHE);
+			if(head >= tail) {
+				tail = sequences.get(TAIL);
+				if(head >= tail) {
+					return 0;
+				}
+				sequences.lazySet(TAIL_CACHE, tail);
+			}
+			return (int) Math.min(limit, tail - head);
+		}
+		int count = 0;
+		while(count < limit) {
+			long sequence = head + count;
+			if(published.get((int) sequence & mask) != round(sequence)) {
+				break;
+			}
+			count++;
+		}
+		return count;
+	}
+	/**
+	 * 读取head之后第offset个元素，只能由消费者在available返回的范围内调用
+	 */
+	public E peek(int offset) {
+		return slot(sequences.get(HEAD) + offset);
+	}
+	/**
+	 * 归还head开始的count个槽位，只能由消费者调用
+	 */
+	public void release(int count) {
+		sequences.lazySet(HEAD, sequences.get(HEAD) + count);
+	}
+	
+	public int size() {
+		return (int) Math.max(0, sequences.get(TAIL) - sequences.get(HEAD));
+	}
+	
+	public int capacity() {
+		return slots.length;
+	}
+	
+	private int round(long sequence) {
+		return (int) (sequence >>> shift) + 1;
+	}
+}
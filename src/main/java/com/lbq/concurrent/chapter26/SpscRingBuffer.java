@@ -0,0 +1,115 @@
+package com.lbq.concurrent.chapter26;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+/**
+ * 单生产者单消费者的无锁环形队列。
+ * 1.tail只会被生产者修改，head只会被消费者修改，因此不需要任何CAS，修改时使用lazySet(store-release)发布即可，
+ *   不需要volatile写的StoreLoad屏障。
+ * 2.生产者写入元素之后才发布tail，消费者读取到tail之后，tail之前的元素对其一定是可见的；消费者清空槽位之后才发布head，同理。
+ * 3.生产者缓存了一份head(headCache)，只有当缓存的head显示队列已满时才会重新读取head，消费者对tail也是如此，
+ *   这样大部分操作都不需要读取对方正在修改的缓存行。
+ * 4.head、tail以及各自的缓存都存放在AtomicLongArray中，生产者和消费者使用的元素之间相隔PADDING个long，避免伪共享(与17章的ScalableReadWriteLock一样)。
+ * @author 14378
+ *
+ * @param <E>
+ */
+public class SpscRingBuffer<E> implements RingBuffer<E> {
+	//16个long即128字节
+	private final static int PADDING = 16;
+	//生产者的缓存行
+	private final static int TAIL = PADDING;
+	
+	private final static int HEAD_CACHE = PADDING + 1;
+	//消费者的缓存行
+	private final static int HEAD = PADDING * 2;
+	
+	private final static int TAIL_CACHE = PADDING * 2 + 1;
+	
+	private final AtomicLongArray sequences = new AtomicLongArray(PADDING * 4);
+	
+	private final Object[] buffer;
+	
+	private final int mask;
+	
+	public SpscRingBuffer(int capacity) {
+		int size = ceilingPowerOfTwo(capacity);
+		this.buffer = new Object[size];
+		this.mask = size - 1;
+	}
+
+	@Override
+	public boolean offer(E e) {
+		if(e == null) {
+			throw new NullPointerException();
+		}
+		long tail = sequences.get(TAIL);
+		long wrapPoint = tail - buffer.length;
+		if(sequences.get(HEAD_CACHE) <= wrapPoint) {
+			long head = sequences.get(HEAD);
+			if(head <= wrapPoint) {
+				return false;
+			}
+			sequences.lazySet(HEAD_CACHE, head);
+		}
+		buffer[(int) tail & mask] = e;
+		sequences.lazySet(TAIL, tail + 1);
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public E poll() {
+		long head = sequences.get(HEAD);
+		if(head >= sequences.get(TAIL_CACHE)) {
+			long tail = sequences.get(TAIL);
+			if(head >= tail) {
+				return null;
+			}
+			sequences.lazySet(TAIL_CACHE, tail);
+		}
+		int index = (int) head & mask;
+		E e = (E) buffer[index];
+		buffer[index] = null;
+		sequences.lazySet(HEAD, head + 1);
+		return e;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public int drainTo(E[] batch, int limit) {
+		long head = sequences.get(HEAD);
+		long tail = sequences.get(TAIL_CACHE);
+		if(head >= tail) {
+			tail = sequences.get(TAIL);
+			if(head >= tail) {
+				return 0;
+			}
+			sequences.lazySet(TAIL_CACHE, tail);
+		}
+		int count = (int) Math.min(limit, tail - head);
+		for(int i = 0; i < count; i++) {
+			int index = (int) (head + i) & mask;
+			batch[i] = (E) buffer[index];
+			buffer[index] = null;
+		}
+		sequences.lazySet(HEAD, head + count);
+		return count;
+	}
+
+	@Override
+	public int size() {
+		return (int) Math.max(0, sequences.get(TAIL) - sequences.get(HEAD));
+	}
+
+	@Override
+	public int capacity() {
+		return buffer.length;
+	}
+	
+	static int ceilingPowerOfTwo(int x) {
+		if(x <= 0) {
+			throw new IllegalArgumentException("the capacity must be positive.");
+		}
+		return 1 << (32 - Integer.numberOfLeadingZeros(x - 1));
+	}
+}
@@ -41,13 +41,13 @@ public class Test {
 		AtomicInteger productionNo = new AtomicInteger();
 		//流水线上有8个工作人员往传送带上不断地放置等待加工的半成品
 		IntStream.range(1, 8).forEach(i -> new Thread(() -> {
-			while(true) {
-				channel.offerProduction(new Production(productionNo.getAndIncrement()));
-				try {
-					TimeUnit.SECONDS.sleep(ThreadLocalRandom.current().nextInt());
-				} catch (InterruptedException e) {
-					e.printStackTrace();
+			try {
+				while(true) {
+					channel.offerProduction(new Production(productionNo.getAndIncrement()));
+					TimeUnit.SECONDS.sleep(ThreadLocalRandom.current().nextInt(10));
 				}
+			} catch (InterruptedException e) {
+				e.printStackTrace();
 			}
 		}).start());
 	}
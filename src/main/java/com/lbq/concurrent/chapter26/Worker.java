@@ -5,32 +5,76 @@ import java.util.concurrent.TimeUnit;
 /**
  * 流水线工人是Thread的子类，不断地从流水线上提取产品，然后进行再次加工，加工的方法是create()（对该产品的加工方法说明书），
  * 流水线工人示例代码如下
+ * 
+ * 每个工人从属于自己的传送带上批量取下产品进行加工，加工的方式由ProductionChannel指定(默认为assemble)，并且记录加工的耗时，供ProductionChannel决定是否需要增减工人；
+ * 被标记为RETIRING之后加工完传送带上剩余的产品即退出，被中断则直接退出。
  * @author 14378
  *
  */
 public class Worker extends Thread {
 
 	private final ProductionChannel channel;
+	//工人的编号，即传送带的编号
+	private final int index;
+	//批量取下的产品，每个工人复用同一个数组
+	private final Production[] batch = new Production[ProductionChannel.BATCH_SIZE];
 	//主要用于获取一个随机值，模拟加工一个产品需要耗费一定的时间，当然每个人操作时所花费的时间也可能不一样
 	private final static Random random = new Random(System.currentTimeMillis());
-	public Worker(String workerName, ProductionChannel channel) {
+	public Worker(String workerName, ProductionChannel channel, int index) {
 		super(workerName);
 		this.channel = channel;
+		this.index = index;
 	}
 
 	@Override
 	public void run() {
-		while(true) {
-			try {
-				//从传送带上获取产品
-				Production production = channel.takeProduction();
-				System.out.println(getName() + " process the " + production);
-				//对产品进行加工
-				production.create();
-				TimeUnit.SECONDS.sleep(random.nextInt(10));
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+		try {
+			int idles = 0;
+			for(;;) {
+				//先读取状态再取产品，这样RETIRING并且没有取到产品时传送带一定已经空了
+				boolean retiring = channel.isRetiring(index);
+				//从传送带上批量获取产品
+				int count = channel.pollProductions(index, batch);
+				if(count == 0) {
+					if(retiring && channel.retire(index)) {
+						break;
+					}
+					Backoff.idle(idles++);
+					continue;
+				}
+				idles = 0;
+				for(int i = 0; i < count; i++) {
+					Production production = batch[i];
+					batch[i] = null;
+					long start = System.nanoTime();
+					//对产品进行加工
+					channel.process(production);
+					channel.recordProcessed(System.nanoTime() - start);
+					channel.releaseProduction(index);
+				}
+				//加工的过程中被中断(中断标识被加工方法恢复)
+				if(isInterrupted()) {
+					throw new InterruptedException();
+				}
 			}
+		} catch (InterruptedException e) {
+			//被中断，退出
+			channel.abandon(index);
+		} finally {
+			channel.workerExited();
+		}
+	}
+	/**
+	 * 默认的加工方式：按照说明书对产品进行加工，并且随机休眠一段时间模拟加工的耗时，被中断时恢复中断标识
+	 * @param production
+	 */
+	static void assemble(Production production) {
+		System.out.println(Thread.currentThread().getName() + " process the " + production);
+		production.create();
+		try {
+			TimeUnit.SECONDS.sleep(random.nextInt(10));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 		}
 	}
 }
@@ -13,5 +13,10 @@ public class ActiveFuture<T> extends FutureTask<T>{
 	public void finish(T result) {
 		super.finish(result);
 	}
+	
+	@Override
+	public void finishExceptionally(Throwable cause) {
+		super.finishExceptionally(cause);
+	}
 
 }
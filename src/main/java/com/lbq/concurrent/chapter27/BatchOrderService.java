@@ -0,0 +1,21 @@
+package com.lbq.concurrent.chapter27;
+
+import java.util.List;
+import java.util.Map;
+
+import com.lbq.concurrent.chapter19.Future;
+/**
+ * 支持批量查询的OrderService
+ * 如果后端存储支持一次查询多个订单(multi-get)，那么将多次findOrderDetails(long orderId)调用合并成一次批量调用，
+ * 可以大大减少与后端交互的次数，BatchingOrderServiceProxy会使用该接口完成批量查询。
+ * @author 14378
+ *
+ */
+public interface BatchOrderService extends OrderService {
+	/**
+	 * 根据多个订单编号批量查询订单明细，返回的Map以订单编号为key，订单明细为value
+	 * @param orderIds
+	 * @return
+	 */
+	Future<Map<Long, String>> findOrderDetails(List<Long> orderIds);
+}
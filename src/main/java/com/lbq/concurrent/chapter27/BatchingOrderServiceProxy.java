@@ -0,0 +1,159 @@
+package com.lbq.concurrent.chapter27;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.lbq.concurrent.chapter19.Future;
+/**
+ * 批量模式的OrderServiceProxy
+ * OrderServiceProxy会为每一次findOrderDetails调用提交一个MethodMessage，执行线程也会逐个地调用OrderService，
+ * BatchingOrderServiceProxy则会把在一个很小的时间窗口(window)内到达的，或者数量达到maxBatchSize的调用收集成一个批次，
+ * 以FindOrderDetailsBatchMessage的形式提交至ActiveMessageQueue，由执行线程调用一次批量查询方法，再将结果分发给每一个调用者。
+ * 
+ * 1.批次中第一个调用到达时开启时间窗口，BatchFlusher线程会在窗口结束时将批次提交。
+ * 2.批次中的调用数量达到maxBatchSize时，由调用线程立即提交该批次，不必等待时间窗口结束。
+ * 3.order方法与OrderServiceProxy一样，每次调用都会提交一个OrderMessage。
+ * 4.shutdown会立即提交尚未提交的批次并停止BatchFlusher，之后的findOrderDetails调用会抛出IllegalStateException。
+ * @author 14378
+ *
+ */
+public class BatchingOrderServiceProxy implements OrderService {
+
+	private final BatchOrderService orderService;
+	
+	private final ActiveMessageQueue activeMessageQueue;
+	//一个批次中最多包含的调用数量
+	private final int maxBatchSize;
+	//收集一个批次的时间窗口，单位为纳秒
+	private final long windowNanos;
+	//当前批次中的订单编号
+	private List<Long> orderIds = new ArrayList<>();
+	//当前批次中每一个调用者的ActiveFuture，与orderIds一一对应
+	private List<ActiveFuture<String>> activeFutures = new ArrayList<>();
+	//当前批次的时间窗口截止时间
+	private long batchDeadline;
+	
+	private final BatchFlusher flusher;
+	
+	private boolean shutdown;
+	
+	public BatchingOrderServiceProxy(BatchOrderService orderService, ActiveMessageQueue activeMessageQueue, int maxBatchSize, long window, TimeUnit unit) {
+		if(maxBatchSize <= 0) {
+			throw new IllegalArgumentException("the maxBatchSize must be positive.");
+		}
+		this.orderService = orderService;
+		this.activeMessageQueue = activeMessageQueue;
+		this.maxBatchSize = maxBatchSize;
+		this.windowNanos = unit.toNanos(window);
+		this.flusher = new BatchFlusher();
+		this.flusher.start();
+	}
+
+	@Override
+	public Future<String> findOrderDetails(long orderId) {
+		final ActiveFuture<String> activeFuture = new ActiveFuture<>();
+		MethodMessage message = null;
+		synchronized(this) {
+			if(shutdown) {
+				throw new IllegalStateException("the proxy has been shut down.");
+			}
+			if(orderIds.isEmpty()) {
+				//批次中的第一个调用，开启时间窗口并唤醒BatchFlusher
+				batchDeadline = System.nanoTime() + windowNanos;
+				this.notifyAll();
+			}
+			orderIds.add(orderId);
+			activeFutures.add(activeFuture);
+			//批次已满，立即提交
+			if(orderIds.size() >= maxBatchSize) {
+				message = drainBatch();
+			}
+		}
+		if(message != null) {
+			activeMessageQueue.offer(message);
+		}
+		return activeFuture;
+	}
+
+	@Override
+	public void order(String account, long orderId) {
+		Map<String, Object> params = new HashMap<>();
+		params.put("account", account);
+		params.put("orderId", orderId);
+		MethodMessage message = new OrderMessage(params, orderService);
+		activeMessageQueue.offer(message);
+	}
+	/**
+	 * 提交尚未提交的批次并停止BatchFlusher，ActiveMessageQueue由调用者负责关闭
+	 */
+	public void shutdown() {
+		MethodMessage message = null;
+		synchronized(this) {
+			if(shutdown) {
+				return;
+			}
+			shutdown = true;
+			if(!orderIds.isEmpty()) {
+				message = drainBatch();
+			}
+		}
+		flusher.interrupt();
+		if(message != null) {
+			activeMessageQueue.offer(message);
+		}
+	}
+	/**
+	 * 将当前批次封装成FindOrderDetailsBatchMessage，并开启一个新的批次，调用者必须持有当前对象的monitor
+	 * @return
+	 */
+	private MethodMessage drainBatch() {
+		Map<String, Object> params = new HashMap<>();
+		params.put("orderIds", orderIds);
+		params.put("activeFutures", activeFutures);
+		orderIds = new ArrayList<>();
+		activeFutures = new ArrayList<>();
+		return new FindOrderDetailsBatchMessage(params, orderService);
+	}
+	/**
+	 * BatchFlusher负责在时间窗口结束时提交尚未满的批次
+	 * @author 14378
+	 *
+	 */
+	private class BatchFlusher extends Thread {
+		
+		BatchFlusher() {
+			super("BatchFlusher");
+			setDaemon(true);
+		}
+		
+		@Override
+		public void run() {
+			while(!isInterrupted()) {
+				MethodMessage message;
+				try {
+					synchronized(BatchingOrderServiceProxy.this) {
+						//没有待提交的调用时进入阻塞
+						while(orderIds.isEmpty()) {
+							BatchingOrderServiceProxy.this.wait();
+						}
+						//等待时间窗口结束，期间批次可能因为已满而被调用线程提交
+						long remaining;
+						while(!orderIds.isEmpty() && (remaining = batchDeadline - System.nanoTime()) > 0) {
+							TimeUnit.NANOSECONDS.timedWait(BatchingOrderServiceProxy.this, remaining);
+						}
+						if(orderIds.isEmpty()) {
+							continue;
+						}
+						message = drainBatch();
+					}
+				} catch (InterruptedException e) {
+					break;
+				}
+				activeMessageQueue.offer(message);
+			}
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package com.lbq.concurrent.chapter27;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import com.lbq.concurrent.chapter19.Future;
+import com.lbq.concurrent.chapter19.FutureExecutionException;
+/**
+ * FindOrderDetailsBatchMessage将一段时间窗口内收集到的多个findOrderDetails调用合并成一个Message，
+ * 执行时只调用一次BatchOrderService的批量查询方法，然后再将结果分发给每一个调用者的ActiveFuture。
+ * 与ActiveMessage一样，执行线程只是在批量查询返回的Future上注册回调，结果由完成查询的线程分发，执行线程不会被阻塞。
+ * @author 14378
+ *
+ */
+public class FindOrderDetailsBatchMessage extends MethodMessage {
+
+	public FindOrderDetailsBatchMessage(Map<String, Object> params, BatchOrderService orderService) {
+		super(params, orderService);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public void execute() {
+		List<Long> orderIds = (List<Long>) params.get("orderIds");
+		List<ActiveFuture<String>> activeFutures = (List<ActiveFuture<String>>) params.get("activeFutures");
+		try {
+			//①同一个订单编号可能被多次查询，批量查询时只需要查询一次
+			List<Long> distinctOrderIds = new ArrayList<>(new LinkedHashSet<>(orderIds));
+			Future<Map<Long, String>> realFuture = ((BatchOrderService) orderService).findOrderDetails(distinctOrderIds);
+			realFuture.addListener(done -> {
+				try {
+					//任务已经完成，get方法不会阻塞
+					dispatch(orderIds, activeFutures, done.get());
+				} catch (FutureExecutionException e) {
+					fail(activeFutures, e.getCause());
+				} catch (Throwable e) {
+					fail(activeFutures, e);
+				}
+			});
+		} catch (Throwable e) {
+			fail(activeFutures, e);
+		}
+	}
+	//②将批量查询的结果按照订单编号分发给每一个调用者
+	private static void dispatch(List<Long> orderIds, List<ActiveFuture<String>> activeFutures, Map<Long, String> results) {
+		for(int i = 0; i < orderIds.size(); i++) {
+			activeFutures.get(i).finish(results == null ? null : results.get(orderIds.get(i)));
+		}
+	}
+	//③批量查询失败时，该批次中所有的调用者都会得到异常
+	private static void fail(List<ActiveFuture<String>> activeFutures, Throwable cause) {
+		activeFutures.forEach(activeFuture -> activeFuture.finishExceptionally(cause));
+	}
+}
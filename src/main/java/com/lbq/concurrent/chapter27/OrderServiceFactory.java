@@ -1,9 +1,12 @@
 package com.lbq.concurrent.chapter27;
+
+import java.util.concurrent.TimeUnit;
 /**
  * 27.2.6 OrderServiceFactory及测试
  * 我们基本已经完成了一个标准Active Objects的设计，接口方法的每一次调用实际上都是向Queue中提交一个对应的Message信息，
  * 当然这个工作主要由Proxy完成的，但是为了让Proxy的构造透明化，我们需要设计一个Factory工具类。
  * toActiveObject方法主要用于创建OrderServiceProxy。
+ * toBatchActiveObject方法用于创建BatchingOrderServiceProxy，将短时间内到达的findOrderDetails调用合并成批量查询。
  * @author 14378
  *
  */
@@ -18,5 +21,15 @@ public final class OrderServiceFactory {
 	public static OrderService toActiveObject(OrderService orderService) {
 		return new OrderServiceProxy(orderService, activeMessageQueue);
 	}
-
+	/**
+	 * 返回批量模式的OrderServiceProxy，不再使用时调用其shutdown方法停止BatchFlusher
+	 * @param orderService 支持批量查询的OrderService
+	 * @param maxBatchSize 一个批次中最多包含的调用数量
+	 * @param window 收集一个批次的时间窗口
+	 * @param unit
+	 * @return
+	 */
+	public static BatchingOrderServiceProxy toBatchActiveObject(BatchOrderService orderService, int maxBatchSize, long window, TimeUnit unit) {
+		return new BatchingOrderServiceProxy(orderService, activeMessageQueue, maxBatchSize, window, unit);
+	}
 }
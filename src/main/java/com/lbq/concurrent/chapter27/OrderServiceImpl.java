@@ -1,5 +1,8 @@
 package com.lbq.concurrent.chapter27;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import com.lbq.concurrent.chapter19.Future;
@@ -8,10 +11,11 @@ import com.lbq.concurrent.chapter19.FutureService;
  * OrderServiceImpl类是OrderService的一个具体实现，该类是在执行线程中将要被使用的类，
  * 其中findOrderDetails方法通过第19章中我们开发的Future立即返回一个结果，
  * Order方法则通过休眠来模拟该方法的执行比较耗时。
+ * 批量的findOrderDetails方法则模拟了一次后端的批量查询(multi-get)。
  * @author 14378
  *
  */
-public class OrderServiceImpl implements OrderService {
+public class OrderServiceImpl implements BatchOrderService {
 
 	@Override
 	public Future<String> findOrderDetails(long orderId) {
@@ -29,6 +33,23 @@ public class OrderServiceImpl implements OrderService {
 		}, orderId, null);
 	}
 
+	@Override
+	public Future<Map<Long, String>> findOrderDetails(List<Long> orderIds) {
+		FutureService<List<Long>, Map<Long, String>> futureService = FutureService.<List<Long>, Map<Long, String>>newService();
+		return futureService.submit(input -> {
+			try {
+				//批量查询只需要一次耗时的后端交互
+				TimeUnit.SECONDS.sleep(10);
+				System.out.println("process the orderIDs -> " + input);
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+			Map<Long, String> details = new HashMap<>();
+			input.forEach(orderId -> details.put(orderId, "The order Details Information"));
+			return details;
+		}, orderIds, null);
+	}
+
 	@Override
 	public void order(String account, long orderId) {
 		try {
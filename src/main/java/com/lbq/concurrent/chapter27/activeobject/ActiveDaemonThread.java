@@ -1,6 +1,8 @@
 package com.lbq.concurrent.chapter27.activeobject;
 /**
  * 与ActiveMessageQueue紧密关联的ActiveDaemonThread也得进行简单修改
+ * 
+ * 一个ActiveMessageQueue可以拥有多个ActiveDaemonThread，当执行线程被中断(ActiveMessageQueue被shutdown)时，会退出循环。
  * @author 14378
  *
  */
@@ -9,15 +11,25 @@ public class ActiveDaemonThread extends Thread {
 	private final ActiveMessageQueue queue;
 	
 	public ActiveDaemonThread(ActiveMessageQueue queue) {
-		super("ActiveDaemonThread");
+		this("ActiveDaemonThread", queue);
+	}
+	
+	public ActiveDaemonThread(String name, ActiveMessageQueue queue) {
+		super(name);
 		this.queue = queue;
 		setDaemon(true);
 	}
 	
 	@Override
 	public void run() {
-		for(;;) {
-			ActiveMessage activeMessage = this.queue.take();
+		while(!isInterrupted()) {
+			ActiveMessage activeMessage;
+			try {
+				activeMessage = this.queue.take();
+			} catch (InterruptedException e) {
+				//被中断时退出
+				break;
+			}
 			activeMessage.execute();
 		}
 	}
@@ -1,8 +1,12 @@
 package com.lbq.concurrent.chapter27.activeobject;
 
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import com.lbq.concurrent.chapter19.Future;
+import com.lbq.concurrent.chapter19.FutureExecutionException;
 import com.lbq.concurrent.chapter27.ActiveFuture;
 /**
  * 包可见，ActiveMessage只在框架内部使用，不会对外暴露。
@@ -13,6 +17,11 @@ import com.lbq.concurrent.chapter27.ActiveFuture;
  * 构造ActiveMessage必须使用Builder方式进行build，其中包含了调用某个方法必需的入参(objects)，
  * 代表该方法的java.lang.reflect.Method实例，将要执行的ActiveService实例(service)，
  * 以及如果该接口方法有返回值，需要返回的Future实例(future)。
+ * 
+ * 如果接口方法的返回类型为CompletionStage，则使用completableFuture作为返回值，执行线程在调用了具体实现之后并不会等待结果，
+ * 而是在Service返回的CompletionStage上注册回调，当结果就绪时由完成计算的线程负责完成completableFuture，
+ * 因此执行线程不会因为某个比较慢的方法而阻塞其他的ActiveMessage。
+ * 返回类型为Future的方法也是如此，执行线程通过Future.addListener注册回调，而不再调用会导致阻塞的get方法。
  * @author 14378
  *
  */
@@ -23,6 +32,8 @@ class ActiveMessage {
 	private final Method method;
 	//有返回值的方法，会返回ActiveFuture<?>类型
 	private final ActiveFuture<Object> future;
+	//返回类型为CompletionStage的方法，会返回CompletableFuture<?>类型
+	private final CompletableFuture<Object> completableFuture;
 	//具体的service接口
 	private final Object service;
 	/**
@@ -33,6 +44,7 @@ class ActiveMessage {
 		this.objects = builder.objects;
 		this.method = builder.method;
 		this.future = builder.future;
+		this.completableFuture = builder.completableFuture;
 		this.service = builder.service;
 	}
 	/**
@@ -42,20 +54,76 @@ class ActiveMessage {
 		try {
 			//执行接口的方法
 			Object result = method.invoke(service, objects);
-			if(future != null) {
-				//如果是有返回值的接口方法，则需要通过get方法获得最终的结果
-				Future<?> realFuture = (Future<?>) result;
-				Object realResult = realFuture.get();
-				//将结果交给ActiveFuture，接口方法的线程会得到返回
-				future.finish(realResult);
+			if(completableFuture != null) {
+				//以异步回调的方式将结果传递给CompletableFuture，执行线程不会被阻塞
+				this.completeAsync((CompletionStage<?>) result);
+			}else if(future != null) {
+				//如果是有返回值的接口方法，则在Future上注册回调，任务完成时将结果交给ActiveFuture，执行线程同样不会被阻塞
+				this.finishAsync((Future<?>) result);
 			}
-		} catch (Exception e) {
-			//如果发生异常，那么有返回值的方法将会显式地指定结果为null，无返回值的接口方法则会忽略该异常
-			if(future != null) {
-				future.finish(null);
+		} catch (Throwable e) {
+			//如果发生异常，那么有返回值的方法将会以异常的方式完成，无返回值的接口方法则会忽略该异常
+			Throwable cause = unwrap(e);
+			if(completableFuture != null) {
+				completableFuture.completeExceptionally(cause);
+			}else if(future != null) {
+				future.finishExceptionally(cause);
 			}
 		}
 	}
+	
+	/**
+	 * ActiveMessageQueue被shutdown时，尚未被执行的ActiveMessage会被取消
+	 */
+	void cancel() {
+		if(completableFuture != null) {
+			completableFuture.cancel(false);
+		}else if(future != null) {
+			future.cancel();
+		}
+	}
+	
+	private void completeAsync(CompletionStage<?> stage) {
+		if(stage == null) {
+			completableFuture.complete(null);
+			return;
+		}
+		stage.whenComplete((value, cause) -> {
+			if(cause != null) {
+				completableFuture.completeExceptionally(unwrap(cause));
+			}else {
+				completableFuture.complete(value);
+			}
+		});
+	}
+	
+	private void finishAsync(Future<?> realFuture) {
+		if(realFuture == null) {
+			future.finish(null);
+			return;
+		}
+		realFuture.addListener(done -> {
+			try {
+				//任务已经完成，get方法不会阻塞
+				future.finish(done.get());
+			} catch (FutureExecutionException e) {
+				future.finishExceptionally(e.getCause());
+			} catch (Throwable e) {
+				future.finishExceptionally(e);
+			}
+		});
+	}
+	/**
+	 * 反射调用时具体实现抛出的异常会被包装成InvocationTargetException，需要将真实的异常取出
+	 * @param e
+	 * @return
+	 */
+	private static Throwable unwrap(Throwable e) {
+		if(e instanceof InvocationTargetException && e.getCause() != null) {
+			return e.getCause();
+		}
+		return e;
+	}
 	/**
 	 * Builder主要负责对ActiveMessage的构建，是一种典型的Gof Builder设计模式
 	 * @author 14378
@@ -68,6 +136,8 @@ class ActiveMessage {
 		
 		private ActiveFuture<Object> future;
 		
+		private CompletableFuture<Object> completableFuture;
+		
 		private Object service;
 		
 		public Builder useMethod(Method method) {
@@ -80,6 +150,11 @@ class ActiveMessage {
 			return this;
 		}
 		
+		public Builder returnCompletableFuture(CompletableFuture<Object> completableFuture) {
+			this.completableFuture = completableFuture;
+			return this;
+		}
+		
 		public Builder withObjects(Object[] objects) {
 			this.objects = objects;
 			return this;
@@ -1,38 +1,135 @@
 package com.lbq.concurrent.chapter27.activeobject;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 /**
  * 27.3.4 ActiveMessageQueue及其他
  * 在27.2.5节中，插入到ActiveMessageQueue中的数据为MethodMessage，由于我们定义了更加通用的ActiveMessage，因此需要修改Queue中的数据类型。
+ * 
+ * ActiveMessageQueue可以拥有多个执行线程，并且队列是有上限的：
+ * 1.构造时可以指定执行线程(ActiveDaemonThread)的数量workerSize，多个执行线程同时从队列中获取ActiveMessage并执行。
+ * 2.构造时可以指定队列的上限limit，当队列中的ActiveMessage达到上限时，offer方法的调用者将会进入阻塞，直到执行线程取走了消息为止(背压)。
+ * 3.take方法在被中断时将InterruptedException抛出，执行线程接收到中断之后会退出，配合shutdown方法可以停止所有的执行线程，
+ *   即使中断信号被ActiveMessage吞掉，执行线程再次调用take时也会因为队列已经被shutdown而退出。
+ * 4.当workerSize为1时，ActiveMessage会严格按照提交的顺序被执行，如果某个Service需要保证方法的执行顺序，
+ *   可以创建一个独享的、只有一个执行线程的ActiveMessageQueue，并通过ActiveServiceFactory.active(instance, queue)使用该队列。
+ * 5.shutdown时尚未被执行的ActiveMessage会被取消，调用者持有的ActiveFuture或者CompletableFuture不会永远得不到结果。
  * @author 14378
  *
  */
 public class ActiveMessageQueue {
+	//默认的执行线程数量
+	private final static int DEFAULT_WORKER_SIZE = 1;
+	//默认的队列上限
+	private final static int DEFAULT_LIMIT = 1024;
 	//与27.2节中的标准Active Objects不一样的是，通用的ActiveMessageQueue只需要提交ActiveMessage
 	private final LinkedList<ActiveMessage> messages = new LinkedList<>();
+	//队列的最大容量
+	private final int limit;
+	//执行ActiveMessage的线程
+	private final ActiveDaemonThread[] workers;
+	
+	private volatile boolean isShutdown = false;
 	
 	public ActiveMessageQueue() {
-		//同样启动ActiveDaemonThread
-		new ActiveDaemonThread(this).start();
+		this(DEFAULT_WORKER_SIZE, DEFAULT_LIMIT);
 	}
-	
-	public void offer(ActiveMessage activeMessage) {
-		synchronized(this) {
-			messages.addLast(activeMessage);
-			this.notify();
+	/**
+	 * 创建ActiveMessageQueue时指定执行线程的数量以及队列的上限
+	 * @param workerSize 执行线程的数量
+	 * @param limit 队列的最大容量
+	 */
+	public ActiveMessageQueue(int workerSize, int limit) {
+		if(workerSize <= 0 || limit <= 0) {
+			throw new IllegalArgumentException("the workerSize and limit must be positive.");
+		}
+		this.limit = limit;
+		this.workers = new ActiveDaemonThread[workerSize];
+		//同样启动ActiveDaemonThread，只不过这次是workerSize个
+		for(int i = 0; i < workerSize; i++) {
+			workers[i] = new ActiveDaemonThread("ActiveDaemonThread-" + i, this);
+			workers[i].start();
 		}
 	}
-	
-	public ActiveMessage take() {
+	/**
+	 * 当队列已满时，调用者会进入阻塞直到有空余的位置，如果在阻塞的过程中被中断，则会恢复中断标识并抛出IllegalStateException
+	 * @param activeMessage
+	 */
+	public void offer(ActiveMessage activeMessage) {
 		synchronized(this) {
-			while(messages.isEmpty()) {
+			if(isShutdown) {
+				throw new IllegalStateException("The active message queue is shutdown.");
+			}
+			while(messages.size() >= limit) {
 				try {
 					this.wait();
 				} catch (InterruptedException e) {
-					e.printStackTrace();
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted while waiting for the active message queue.", e);
+				}
+				if(isShutdown) {
+					throw new IllegalStateException("The active message queue is shutdown.");
 				}
 			}
-			return messages.removeFirst();
+			messages.addLast(activeMessage);
+			//生产者与执行线程都在同一个monitor上等待，因此需要使用notifyAll
+			this.notifyAll();
 		}
 	}
+	/**
+	 * 执行线程在队列为空时会进入阻塞，被中断时需要将该异常抛出以通知ActiveDaemonThread退出，
+	 * 执行ActiveMessage的Servant可能会吞掉shutdown发出的中断，因此被shutdown之后同样抛出InterruptedException
+	 * @return
+	 * @throws InterruptedException 被中断或者队列已经被shutdown
+	 */
+	public ActiveMessage take() throws InterruptedException {
+		synchronized(this) {
+			while(messages.isEmpty() && !isShutdown) {
+				this.wait();
+			}
+			if(isShutdown) {
+				throw new InterruptedException("The active message queue is shutdown.");
+			}
+			ActiveMessage activeMessage = messages.removeFirst();
+			//队列中有了空余的位置，唤醒因队列已满而阻塞的提交线程
+			this.notifyAll();
+			return activeMessage;
+		}
+	}
+	/**
+	 * 返回队列中尚未被执行的ActiveMessage数量
+	 * @return
+	 */
+	public int size() {
+		synchronized(this) {
+			return messages.size();
+		}
+	}
+	/**
+	 * 停止所有的执行线程，尚未被执行的ActiveMessage将会被丢弃，其返回的Future会被取消
+	 */
+	public void shutdown() {
+		List<ActiveMessage> dropped;
+		synchronized(this) {
+			if(isShutdown) {
+				return;
+			}
+			isShutdown = true;
+			dropped = new ArrayList<>(messages);
+			messages.clear();
+			this.notifyAll();
+		}
+		for(ActiveDaemonThread worker : workers) {
+			worker.interrupt();
+		}
+		//在锁外取消，Future上注册的回调不会在持有队列锁的情况下执行
+		for(ActiveMessage activeMessage : dropped) {
+			activeMessage.cancel();
+		}
+	}
+	
+	public boolean isShutdown() {
+		return isShutdown;
+	}
 }
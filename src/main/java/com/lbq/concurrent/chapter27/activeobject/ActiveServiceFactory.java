@@ -3,6 +3,8 @@ package com.lbq.concurrent.chapter27.activeobject;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import com.lbq.concurrent.chapter19.Future;
 import com.lbq.concurrent.chapter27.ActiveFuture;
@@ -13,9 +15,12 @@ import com.lbq.concurrent.chapter27.ActiveFuture;
  * 在下述代码中：
  * 1.静态方法active()会根据ActiveService实例生成一个动态代理实例，其中会用到ActiveInvocationHandler作为newProxyInstance的InvocationHandler。
  * 2.在ActiveInvocationHandler的invoke方法中，首先会判断该方法是否被@ActiveMethod标记，如果没有则被当作正常方法来使用。
- * 3.如果接口方法被@ActiveMethod标记，则需要判断方法是否符合规范：有返回类型，必须是Future类型。
+ * 3.如果接口方法被@ActiveMethod标记，则需要判断方法是否符合规范：有返回类型，必须是Future类型或者CompletionStage类型。
  * 4.定义ActiveMessage.Builder分别使用method、方法参数数组以及Active Service实例，如果该方法是Future的返回类型，则还需要定义ActiveFuture。
  * 5.最后将ActiveMessage插入ActiveMessageQueue中，并且返回method方法invoke结果。
+ * 6.默认情况下所有的Active Service共享同一个ActiveMessageQueue，也可以通过active(instance, queue)
+ *   为某个Service指定独享的队列，当队列的workerSize为1时该Service的方法将严格按照调用顺序执行，
+ *   队列由调用者创建并持有，不再使用时由调用者负责shutdown。
  * @author 14378
  *
  */
@@ -24,8 +29,13 @@ public class ActiveServiceFactory {
 	private final static ActiveMessageQueue queue = new ActiveMessageQueue();
 	
 	public static <T> T active(T instance){
+		return active(instance, queue);
+	}
+	
+	@SuppressWarnings("unchecked")
+	public static <T> T active(T instance, ActiveMessageQueue queue){
 		//生产Service的代理类
-		Object proxy = Proxy.newProxyInstance(instance.getClass().getClassLoader(), instance.getClass().getInterfaces(), new ActiveInvocationHandler<>(instance));
+		Object proxy = Proxy.newProxyInstance(instance.getClass().getClassLoader(), instance.getClass().getInterfaces(), new ActiveInvocationHandler<>(instance, queue));
 		return (T) proxy;
 	}
 	/**
@@ -38,8 +48,11 @@ public class ActiveServiceFactory {
 
 		private final T instance;
 		
-		ActiveInvocationHandler(T instance){
+		private final ActiveMessageQueue queue;
+		
+		ActiveInvocationHandler(T instance, ActiveMessageQueue queue){
 			this.instance = instance;
+			this.queue = queue;
 		}
 		
 		@Override
@@ -50,9 +63,14 @@ public class ActiveServiceFactory {
 				ActiveMessage.Builder builder = new ActiveMessage.Builder();
 				builder.useMethod(method).withObjects(args).forService(instance);
 				Object result = null;
-				if(this.isReturnFutureType(method)) {
-					result = new ActiveFuture<>();
-					builder.returnFuture((ActiveFuture) result);
+				if(this.isReturnCompletionStageType(method)) {
+					CompletableFuture<Object> completableFuture = new CompletableFuture<>();
+					builder.returnCompletableFuture(completableFuture);
+					result = completableFuture;
+				}else if(this.isReturnFutureType(method)) {
+					ActiveFuture<Object> future = new ActiveFuture<>();
+					builder.returnFuture(future);
+					result = future;
 				}
 				//将ActiveMessage加入至队列中
 				queue.offer(builder.build());
@@ -68,8 +86,8 @@ public class ActiveServiceFactory {
 		 * @throws IllegalActiveMethod
 		 */
 		private void checkMethod(Method method) throws IllegalActiveMethod {
-			if(!isReturnVoidType(method) && !isReturnFutureType(method)) {
-				throw new IllegalActiveMethod("the method [" + method.getName() + " return type must be void/Future");
+			if(!isReturnVoidType(method) && !isReturnCompletionStageType(method) && !isReturnFutureType(method)) {
+				throw new IllegalActiveMethod("the method [" + method.getName() + " return type must be void/Future/CompletionStage");
 			}
 		}
 		/**
@@ -80,6 +98,15 @@ public class ActiveServiceFactory {
 		private boolean isReturnFutureType(Method method) {
 			return method.getReturnType().isAssignableFrom(Future.class);
 		}
+		/**
+		 * 判断方法是否为CompletionStage返回类型，返回的CompletableFuture必须能够赋值给方法声明的返回类型
+		 * @param method
+		 * @return
+		 */
+		private boolean isReturnCompletionStageType(Method method) {
+			Class<?> returnType = method.getReturnType();
+			return CompletionStage.class.isAssignableFrom(returnType) && returnType.isAssignableFrom(CompletableFuture.class);
+		}
 		/**
 		 * 判断方法是否无返回类型
 		 * @param method
@@ -0,0 +1,291 @@
+package com.lbq.concurrent.metrics.lock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.lbq.concurrent.chapter05.Lock;
+import com.lbq.concurrent.chapter17.ReadWriteLock;
+/**
+ * LockProfiler用于找出chapter05的BooleanLock以及chapter17的ReadWriteLock中哪些锁的竞争最激烈，它是可选的，
+ * 只有通过profile方法包装过的锁才会被统计，对于每一个锁以及每一个调用点(获取锁的代码位置)统计如下信息：
+ * 1.lock.<name>.acquisitions：获取锁的次数的Counter，每次都会被记录。
+ * 2.lock.<name>.<callSite>.wait：等待锁的时间的Timer，Reporter的convertDurationsTo决定输出的时间单位。
+ * 3.lock.<name>.<callSite>.hold：持有锁的时间的Timer。
+ * 4.lock.<name>.longest-holders：持有锁时间最长的几次记录，包括线程以及调用点。
+ * 
+ * 为了能够在生产环境中一直开启，统计的开销被尽可能地降低了：
+ * 1.获取锁的次数使用Counter(内部为LongAdder)记录，每次获取锁只需要一次几乎没有竞争的加法。
+ * 2.每个线程平均每sampleInterval次获取锁中的一次会被采样，只有被采样的那一次才会调用System.nanoTime以及通过栈信息计算调用点。
+ * 3.采样的结果先记录在线程自己的缓冲区(ThreadLocal)中，缓冲区满了之后才会批量地写入Timer，避免多个线程在Timer上竞争。
+ *   也可以调用flush方法将当前线程的缓冲区立即写入，长时间空闲的线程中可能会残留少量没有被写入的采样。
+ * 
+ * 所有的Metric都被注册到构造时传入的MetricRegistry中，因此可以使用任意一种Reporter进行输出，
+ * 多个LockProfiler使用同一个MetricRegistry以及同一个锁的名称时，Counter以及Timer会被共享，longest-holders只保留先注册的一个。
+ * @author 14378
+ *
+ */
+public class LockProfiler {
+	//线程缓冲区的大小
+	private final static int BUFFER_SIZE = 32;
+	//每个线程最多同时跟踪的被采样的锁
+	private final static int MAX_HELD_SAMPLES = 16;
+	//计算调用点时需要跳过的类，LockProfilerExample等同一个包中的其他类仍然会被当作调用点
+	private final static Set<String> PROFILER_CLASSES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+			LockProfiler.class.getName(), ProfiledLock.class.getName(), ProfiledReadWriteLock.class.getName())));
+	
+	private final MetricRegistry registry;
+	
+	private final int sampleInterval;
+	
+	private final ConcurrentHashMap<String, LockProfile> profiles = new ConcurrentHashMap<>();
+	
+	private final ThreadLocal<ThreadState> threadStates = ThreadLocal.withInitial(ThreadState::new);
+	/**
+	 * 
+	 * @param registry
+	 * @param sampleInterval 每个线程平均每sampleInterval次获取锁采样一次，为1时每次都采样
+	 */
+	public LockProfiler(MetricRegistry registry, int sampleInterval) {
+		if(sampleInterval <= 0) {
+			throw new IllegalArgumentException("the sample interval must be positive.");
+		}
+		this.registry = registry;
+		this.sampleInterval = sampleInterval;
+	}
+	
+	public Lock profile(String name, Lock lock) {
+		return new ProfiledLock(lock, this, profileOf(name));
+	}
+	/**
+	 * 读锁和写锁分别以name.read和name.write进行统计
+	 * @param name
+	 * @param readWriteLock
+	 * @return
+	 */
+	public ReadWriteLock profile(String name, ReadWriteLock readWriteLock) {
+		return new ProfiledReadWriteLock(readWriteLock, this, profileOf(name + ".read"), profileOf(name + ".write"));
+	}
+	/**
+	 * 将当前线程缓冲区中的采样写入Timer
+	 */
+	public void flush() {
+		threadStates.get().flush();
+	}
+	
+	private LockProfile profileOf(String name) {
+		return profiles.computeIfAbsent(name, key -> {
+			LockProfile profile = new LockProfile(key, registry.counter(MetricRegistry.name("lock", key, "acquisitions")));
+			try {
+				registry.register(MetricRegistry.name("lock", key, "longest-holders"), (Gauge<List<String>>) profile::longestHolders);
+			} catch (IllegalArgumentException e) {
+				//同名的锁已经被其他LockProfiler注册
+			}
+			return profile;
+		});
+	}
+	/**
+	 * 在获取锁之前调用
+	 * @param profile
+	 * @return 本次需要采样时返回开始等待的时间，否则返回0
+	 */
+	long beforeAcquire(LockProfile profile) {
+		profile.recordAcquisition();
+		ThreadState state = threadStates.get();
+		if(--state.countdown > 0) {
+			return 0L;
+		}
+		//采样间隔在[1, 2 * sampleInterval - 1]之间随机，平均为sampleInterval，避免多个锁交替获取时总是采样到同一个锁
+		state.countdown = ThreadLocalRandom.current().nextInt(2 * sampleInterval - 1) + 1;
+		return System.nanoTime();
+	}
+	//成功获取锁之后调用，waitStart为beforeAcquire的返回值
+	void afterAcquire(LockProfile profile, long waitStart) {
+		if(waitStart == 0L) {
+			return;
+		}
+		long now = System.nanoTime();
+		ThreadState state = threadStates.get();
+		if(state.held.size() >= MAX_HELD_SAMPLES) {
+			//由其他线程释放的锁不会被当前线程匹配到，丢弃最老的记录避免无限增长
+			state.held.remove(0);
+		}
+		state.held.add(new HeldSample(profile, profile.callSite(callSite()), now - waitStart, now));
+	}
+	//释放锁之前调用
+	void beforeRelease(LockProfile profile) {
+		ThreadState state = threadStates.get();
+		List<HeldSample> held = state.held;
+		//没有被采样的锁，这是最常见的情况
+		if(held.isEmpty()) {
+			return;
+		}
+		for(int i = held.size() - 1; i >= 0; i--) {
+			HeldSample sample = held.get(i);
+			if(sample.profile == profile) {
+				held.remove(i);
+				state.record(sample, System.nanoTime() - sample.acquiredAt);
+				return;
+			}
+		}
+	}
+	//第一个不属于LockProfiler以及被包装的锁的栈帧就是获取锁的代码位置
+	private static String callSite() {
+		for(StackTraceElement element : new Throwable().getStackTrace()) {
+			String className = element.getClassName();
+			int inner = className.indexOf('$');
+			if(PROFILER_CLASSES.contains(inner < 0 ? className : className.substring(0, inner))) {
+				continue;
+			}
+			return className.substring(className.lastIndexOf('.') + 1) + "." + element.getMethodName() + ":" + element.getLineNumber();
+		}
+		return "unknown";
+	}
+	/**
+	 * 每个锁的统计数据
+	 * @author 14378
+	 *
+	 */
+	final class LockProfile {
+		
+		private final static int LONGEST_HOLDERS = 5;
+		
+		private final String name;
+		
+		private final Counter acquisitions;
+		
+		private final ConcurrentHashMap<String, CallSite> callSites = new ConcurrentHashMap<>();
+		//按照持有时间从长到短排列，只会在synchronized中被访问
+		private final List<HeldSample> longestHolders = new ArrayList<>();
+		
+		LockProfile(String name, Counter acquisitions) {
+			this.name = name;
+			this.acquisitions = acquisitions;
+		}
+		
+		void recordAcquisition() {
+			acquisitions.inc();
+		}
+		
+		CallSite callSite(String site) {
+			return callSites.computeIfAbsent(site, key -> new CallSite(key,
+					registry.timer(MetricRegistry.name("lock", name, key, "wait")),
+					registry.timer(MetricRegistry.name("lock", name, key, "hold"))));
+		}
+		
+		synchronized void offerLongestHolder(HeldSample sample) {
+			if(longestHolders.size() == LONGEST_HOLDERS && longestHolders.get(LONGEST_HOLDERS - 1).holdNanos >= sample.holdNanos) {
+				return;
+			}
+			int index = 0;
+			while(index < longestHolders.size() && longestHolders.get(index).holdNanos >= sample.holdNanos) {
+				index++;
+			}
+			longestHolders.add(index, sample);
+			if(longestHolders.size() > LONGEST_HOLDERS) {
+				longestHolders.remove(LONGEST_HOLDERS);
+			}
+		}
+		
+		synchronized List<String> longestHolders() {
+			List<String> holders = new ArrayList<>(longestHolders.size());
+			for(HeldSample sample : longestHolders) {
+				holders.add(sample.threadName + "@" + sample.callSite.name() + "=" + sample.holdNanos + "ns");
+			}
+			return holders;
+		}
+	}
+	/**
+	 * 每个调用点的等待时间以及持有时间
+	 * @author 14378
+	 *
+	 */
+	static final class CallSite {
+		
+		private final Timer wait;
+		
+		private final Timer hold;
+		
+		private final String name;
+		
+		CallSite(String name, Timer wait, Timer hold) {
+			this.name = name;
+			this.wait = wait;
+			this.hold = hold;
+		}
+		
+		String name() {
+			return name;
+		}
+	}
+	/**
+	 * 一次被采样的锁的获取
+	 * @author 14378
+	 *
+	 */
+	static final class HeldSample {
+		
+		private final LockProfile profile;
+		
+		private final CallSite callSite;
+		
+		private final long waitNanos;
+		
+		private final long acquiredAt;
+		
+		private final String threadName = Thread.currentThread().getName();
+		
+		private long holdNanos;
+		
+		HeldSample(LockProfile profile, CallSite callSite, long waitNanos, long acquiredAt) {
+			this.profile = profile;
+			this.callSite = callSite;
+			this.waitNanos = waitNanos;
+			this.acquiredAt = acquiredAt;
+		}
+	}
+	/**
+	 * 线程私有的状态，不需要任何同步
+	 * @author 14378
+	 *
+	 */
+	private static final class ThreadState {
+		//距离下一次采样还剩多少次获取锁，初始为1使得每个线程的第一次获取锁会被采样
+		private int countdown = 1;
+		//当前线程持有的被采样的锁
+		private final List<HeldSample> held = new ArrayList<>(4);
+		//已经释放但是还没有被写入Timer的采样
+		private final HeldSample[] buffer = new HeldSample[BUFFER_SIZE];
+		
+		private int size;
+		
+		void record(HeldSample sample, long holdNanos) {
+			sample.holdNanos = holdNanos;
+			buffer[size++] = sample;
+			if(size == BUFFER_SIZE) {
+				flush();
+			}
+		}
+		
+		void flush() {
+			for(int i = 0; i < size; i++) {
+				HeldSample sample = buffer[i];
+				sample.callSite.wait.update(sample.waitNanos, TimeUnit.NANOSECONDS);
+				sample.callSite.hold.update(sample.holdNanos, TimeUnit.NANOSECONDS);
+				sample.profile.offerLongestHolder(sample);
+				buffer[i] = null;
+			}
+			size = 0;
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package com.lbq.concurrent.metrics.lock;
+
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.ConsoleReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.lbq.concurrent.chapter05.BooleanLock;
+import com.lbq.concurrent.chapter05.Lock;
+import com.lbq.concurrent.chapter17.ReadWriteLock;
+/**
+ * 使用LockProfiler统计一个BooleanLock以及一个ReadWriteLock的竞争情况，并且通过ConsoleReporter每隔10秒输出一次，
+ * 输出中可以看到每个调用点等待锁和持有锁的时间分布，以及持有锁时间最长的线程。
+ * @author 14378
+ *
+ */
+public class LockProfilerExample {
+	
+	private final static MetricRegistry registry = new MetricRegistry();
+	
+	private final static ConsoleReporter reporter = ConsoleReporter.forRegistry(registry)
+			.convertRatesTo(TimeUnit.SECONDS)
+			.convertDurationsTo(TimeUnit.MILLISECONDS)
+			.build();
+	
+	private final static LockProfiler profiler = new LockProfiler(registry, 100);
+
+	public static void main(String[] args) {
+		reporter.start(10, TimeUnit.SECONDS);
+		Lock lock = profiler.profile("booleanLock", new BooleanLock());
+		ReadWriteLock readWriteLock = profiler.profile("shareData", ReadWriteLock.scalableReadWriteLock());
+		for(int i = 0; i < 4; i++) {
+			new Thread(() -> {
+				for(;;) {
+					try {
+						lock.lock();
+						try {
+							TimeUnit.MICROSECONDS.sleep(100);
+						} finally {
+							lock.unlock();
+						}
+						readWriteLock.readLock().lock();
+						readWriteLock.readLock().unlock();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}, "worker-" + i).start();
+		}
+		new Thread(() -> {
+			for(;;) {
+				try {
+					readWriteLock.writeLock().lock();
+					try {
+						TimeUnit.MILLISECONDS.sleep(1);
+					} finally {
+						readWriteLock.writeLock().unlock();
+					}
+					TimeUnit.MILLISECONDS.sleep(10);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}, "writer").start();
+	}
+}
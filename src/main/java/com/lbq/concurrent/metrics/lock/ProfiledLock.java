@@ -0,0 +1,51 @@
+package com.lbq.concurrent.metrics.lock;
+
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import com.lbq.concurrent.chapter05.Lock;
+import com.lbq.concurrent.metrics.lock.LockProfiler.LockProfile;
+/**
+ * 对chapter05.Lock的包装，在获取和释放锁的前后通知LockProfiler。
+ * @author 14378
+ *
+ */
+class ProfiledLock implements Lock {
+	
+	private final Lock delegate;
+	
+	private final LockProfiler profiler;
+	
+	private final LockProfile profile;
+	
+	ProfiledLock(Lock delegate, LockProfiler profiler, LockProfile profile) {
+		this.delegate = delegate;
+		this.profiler = profiler;
+		this.profile = profile;
+	}
+
+	@Override
+	public void lock() throws InterruptedException {
+		long waitStart = profiler.beforeAcquire(profile);
+		delegate.lock();
+		profiler.afterAcquire(profile, waitStart);
+	}
+
+	@Override
+	public void lock(long millis) throws InterruptedException, TimeoutException {
+		long waitStart = profiler.beforeAcquire(profile);
+		delegate.lock(millis);
+		profiler.afterAcquire(profile, waitStart);
+	}
+
+	@Override
+	public void unlock() {
+		profiler.beforeRelease(profile);
+		delegate.unlock();
+	}
+
+	@Override
+	public List<Thread> getBlockedThreads() {
+		return delegate.getBlockedThreads();
+	}
+}
@@ -0,0 +1,87 @@
+package com.lbq.concurrent.metrics.lock;
+
+import com.lbq.concurrent.chapter17.Lock;
+import com.lbq.concurrent.chapter17.ReadWriteLock;
+import com.lbq.concurrent.metrics.lock.LockProfiler.LockProfile;
+/**
+ * 对chapter17.ReadWriteLock的包装，读锁和写锁分别使用各自的LockProfile进行统计，乐观读不会被统计。
+ * @author 14378
+ *
+ */
+class ProfiledReadWriteLock implements ReadWriteLock {
+	
+	private final ReadWriteLock delegate;
+	
+	private final Lock readLock;
+	
+	private final Lock writeLock;
+	
+	ProfiledReadWriteLock(ReadWriteLock delegate, LockProfiler profiler, LockProfile readProfile, LockProfile writeProfile) {
+		this.delegate = delegate;
+		this.readLock = new ProfiledRWLock(delegate.readLock(), profiler, readProfile);
+		this.writeLock = new ProfiledRWLock(delegate.writeLock(), profiler, writeProfile);
+	}
+
+	@Override
+	public Lock readLock() {
+		return readLock;
+	}
+
+	@Override
+	public Lock writeLock() {
+		return writeLock;
+	}
+
+	@Override
+	public int getWritingWriters() {
+		return delegate.getWritingWriters();
+	}
+
+	@Override
+	public int getWaitingWriters() {
+		return delegate.getWaitingWriters();
+	}
+
+	@Override
+	public int getReadingReaders() {
+		return delegate.getReadingReaders();
+	}
+
+	@Override
+	public long tryOptimisticRead() {
+		return delegate.tryOptimisticRead();
+	}
+
+	@Override
+	public boolean validate(long stamp) {
+		return delegate.validate(stamp);
+	}
+	
+	private static class ProfiledRWLock implements Lock {
+		
+		private final Lock delegate;
+		
+		private final LockProfiler profiler;
+		
+		private final LockProfile profile;
+		
+		ProfiledRWLock(Lock delegate, LockProfiler profiler, LockProfile profile) {
+			this.delegate = delegate;
+			this.profiler = profiler;
+			this.profile = profile;
+		}
+
+		@Override
+		public void lock() throws InterruptedException {
+			long waitStart = profiler.beforeAcquire(profile);
+			delegate.lock();
+			profiler.afterAcquire(profile, waitStart);
+		}
+
+		@Override
+		public void unlock() {
+			profiler.beforeRelease(profile);
+			delegate.unlock();
+		}
+	}
+}